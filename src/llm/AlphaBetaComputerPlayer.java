@@ -0,0 +1,282 @@
+package llm;
+
+/**
+ * Computer player that runs a negamax alpha-beta search with iterative deepening.
+ * Every move gets a wall-clock budget; when it runs out the best move of the deepest
+ * finished iteration is played.
+ *
+ * Scores are the points the side to move can still gain over its opponent from a position.
+ * A move that forms an SOS keeps the turn, so its child is searched from the same side's
+ * point of view and is not negated. In simple mode forming an SOS wins outright.
+ * Since scores do not depend on the points already scored, results are cached by position
+ * hash in a TranspositionTable, shared by default with every other search in the process.
+ */
+public class AlphaBetaComputerPlayer extends ComputerPlayer {
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 1000;
+    static final int WIN_SCORE = 100_000;      // Simple mode: forming the first SOS
+    static final int INFINITE = 1_000_000;
+    private static final int CHECK_INTERVAL = 1023; // Nodes between clock checks, minus one
+    private static final char[] LETTERS = {'S', 'O'};
+
+    private final long timeBudgetMillis;
+    private final TranspositionTable table;
+
+    // State of the running search
+    private GameMode position;
+    private long variantKey;     // Keeps other board sizes and modes apart in the shared table
+    private int[][] moveBuffers; // Candidate moves per ply, in search order
+    private int[][] gainBuffers; // Points each candidate scores at once, used for ordering
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    private int completedDepth;
+
+    public AlphaBetaComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode) {
+        this(playerSymbol, gameMode, isSimpleMode, DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    public AlphaBetaComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode, long timeBudgetMillis) {
+        this(playerSymbol, gameMode, isSimpleMode, timeBudgetMillis, TranspositionTable.shared());
+    }
+
+    public AlphaBetaComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode, long timeBudgetMillis,
+            TranspositionTable table) {
+        super(playerSymbol, gameMode, isSimpleMode);
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.table = table;
+    }
+
+    @Override
+    public Move makeMove(GameMode state, char[][] board) {
+        if (state.isGameOver()) {
+            return null;
+        }
+        position = state.copy(); // Search on a private copy; the caller's game is never touched
+        variantKey = Zobrist.variantKey(position.getBoardSize(), isSimpleMode);
+        table.newSearch();
+        deadline = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+        nodes = 0;
+        aborted = false;
+        completedDepth = 0;
+
+        int empty = position.getEmptyCellCount();
+        moveBuffers = new int[empty + 1][empty * 2];
+        gainBuffers = new int[empty + 1][empty * 2];
+
+        long rootEntry = table.probe(position.getHash() ^ variantKey);
+        int rootCount = generateMoves(0, rootEntry != 0 ? TranspositionTable.move(rootEntry) : -1);
+        int[] rootMoves = moveBuffers[0].clone();
+        int[] rootScores = new int[rootCount];
+        int bestMove = rootMoves[0];
+        int bestScore = -INFINITE;
+
+        for (int depth = 1; depth <= empty && !aborted; depth++) {
+            int alpha = -INFINITE;
+            int iterationMove = -1;
+            int searched = 0;
+            for (; searched < rootCount; searched++) {
+                int score = searchMove(rootMoves[searched], depth, alpha, INFINITE, 0);
+                if (aborted) {
+                    break;
+                }
+                rootScores[searched] = score;
+                if (score > alpha) {
+                    alpha = score;
+                    iterationMove = rootMoves[searched];
+                }
+            }
+
+            // A partial iteration still counts once the previous best move has been re-searched,
+            // since that move is always tried first
+            if (searched > 0 && iterationMove != -1) {
+                bestMove = iterationMove;
+                bestScore = alpha;
+            }
+            if (aborted) {
+                break;
+            }
+            completedDepth = depth;
+            orderByScore(rootMoves, rootScores, rootCount);
+            if (isSimpleMode && Math.abs(bestScore) >= WIN_SCORE - empty) {
+                break; // Forced win or loss found; deeper search cannot change it
+            }
+        }
+
+        position = null;
+        int cell = Move.cellOf(bestMove);
+        int size = state.getBoardSize();
+        return new Move(cell / size, cell % size, Move.letterOf(bestMove), bestScore);
+    }
+
+    // Depth of the last fully searched iteration of the most recent makeMove call
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    // Nodes visited by the most recent makeMove call
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    // Play one move, search the rest, take it back; returns the score from the mover's side
+    private int searchMove(int move, int depth, int alpha, int beta, int ply) {
+        int cell = Move.cellOf(move);
+        int size = position.getBoardSize();
+        int score;
+        if (!position.makeMove(cell / size, cell % size, Move.letterOf(move))) {
+            score = -search(depth - 1, -beta, -alpha, ply + 1);
+        } else if (isSimpleMode) {
+            score = WIN_SCORE - ply; // Prefer the quickest win
+        } else {
+            // The mover goes again, so the child is scored from the same side
+            int gain = position.getLastMoveSequenceCount();
+            score = gain + search(depth - 1, alpha - gain, beta - gain, ply + 1);
+        }
+        position.undoMove();
+        return score;
+    }
+
+    private int search(int depth, int alpha, int beta, int ply) {
+        if ((++nodes & CHECK_INTERVAL) == 0 && (System.nanoTime() > deadline || Thread.currentThread().isInterrupted())) {
+            aborted = true;
+        }
+        if (aborted || position.getEmptyCellCount() == 0) {
+            return 0;
+        }
+        if (depth <= 0) {
+            return quiesce(ply);
+        }
+
+        // A stored result that searched at least as deep can settle this node at once
+        long key = position.getHash() ^ variantKey;
+        long entry = table.probe(key);
+        int tableMove = -1;
+        if (entry != 0) {
+            tableMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int count = generateMoves(ply, tableMove);
+        int[] moves = moveBuffers[ply];
+        int best = -INFINITE;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++) {
+            int score = searchMove(moves[i], depth, alpha, beta, ply);
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = moves[i];
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break; // Cut-off
+                    }
+                }
+            }
+        }
+
+        int bound = best <= originalAlpha ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        table.store(key, depth, bound, bestMove, toTable(best, ply));
+        return best;
+    }
+
+    // Win scores count plies from the root; the table stores them counted from the node instead
+    private static int toTable(int score, int ply) {
+        if (score > WIN_SCORE / 2) {
+            return score + ply;
+        }
+        return score < -WIN_SCORE / 2 ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > WIN_SCORE / 2) {
+            return score - ply;
+        }
+        return score < -WIN_SCORE / 2 ? score + ply : score;
+    }
+
+    /**
+     * Leaf evaluation. Scoring keeps the turn, so the side to move cashes in the biggest SOS
+     * available, again and again, before the position is treated as quiet (worth 0).
+     * Taking the largest gain greedily avoids trying every order of the open SOSs.
+     */
+    private int quiesce(int ply) {
+        if ((++nodes & CHECK_INTERVAL) == 0 && (System.nanoTime() > deadline || Thread.currentThread().isInterrupted())) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        int size = position.getBoardSize();
+        int bestMove = -1;
+        int bestGain = 0;
+        for (int k = 0; k < position.getEmptyCellCount(); k++) {
+            int cell = position.getEmptyCell(k);
+            for (char letter : LETTERS) {
+                int gain = position.getCompletionCount(cell, letter);
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestMove = Move.encode(cell, letter);
+                }
+            }
+        }
+        if (bestMove == -1) {
+            return 0;
+        }
+        if (isSimpleMode) {
+            return WIN_SCORE - ply;
+        }
+        int cell = Move.cellOf(bestMove);
+        position.makeMove(cell / size, cell % size, Move.letterOf(bestMove));
+        int score = bestGain + quiesce(ply + 1);
+        position.undoMove();
+        return score;
+    }
+
+    // Fill moveBuffers[ply] with every legal move: the table move, then scoring moves first.
+    // Returns the count.
+    private int generateMoves(int ply, int tableMove) {
+        int[] moves = moveBuffers[ply];
+        int[] gains = gainBuffers[ply];
+        int count = 0;
+        for (int k = 0; k < position.getEmptyCellCount(); k++) {
+            int cell = position.getEmptyCell(k);
+            for (char letter : LETTERS) {
+                int move = Move.encode(cell, letter);
+                gains[count] = move == tableMove ? Integer.MAX_VALUE : position.getCompletionCount(cell, letter);
+                moves[count++] = move;
+            }
+        }
+        orderByScore(moves, gains, count);
+        return count;
+    }
+
+    // Stable insertion sort of moves by descending score
+    private static void orderByScore(int[] moves, int[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+}
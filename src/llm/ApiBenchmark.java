@@ -0,0 +1,140 @@
+package llm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Latency benchmark for the API player against StubApiServer. Runs headless GameSessions at
+ * the same time, each with its own pair of API players on 8x8 General mode, starting from a
+ * few random moves so the move cache does not answer for the API. Each game plays the given
+ * number of turns, and every computer turn is timed. The load runs once with the full prompt
+ * and once with the compact encoding.
+ *
+ * Reports, per encoding: p50/p99 turn latency, turns per second, tokens per position asked,
+ * and the share of requests the local engine had to answer. The client settings come from the
+ * usual system properties (sos.api.budget.ms, sos.api.hedge, sos.api.stream, sos.api.batch,
+ * sos.api.concurrency, ...).
+ *
+ * Usage: java llm.ApiBenchmark [games] [turns per game] [median ms] [sigma] [error rate] [malformed rate]
+ */
+public final class ApiBenchmark {
+    private static final int BOARD_SIZE = 8;
+    private static final int OPENING_MOVES = 4;
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        StubApiServer stub = new StubApiServer(0);
+        stub.setLatency(args.length > 2 ? Long.parseLong(args[2]) : 300, args.length > 3 ? Double.parseDouble(args[3]) : 0.5);
+        stub.setErrorRate(args.length > 4 ? Double.parseDouble(args[4]) : 0.02);
+        stub.setMalformedRate(args.length > 5 ? Double.parseDouble(args[5]) : 0.05);
+        stub.start();
+        for (boolean compact : new boolean[]{false, true}) {
+            run(stub, games, turns, compact);
+        }
+        stub.stop();
+        System.exit(0);
+    }
+
+    private static void run(StubApiServer stub, int games, int turns, boolean compact) {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        List<ComputerPlayerAPI> players = Collections.synchronizedList(new ArrayList<>());
+        GameSession.PlayerFactory api = (symbol, mode, simple) -> {
+            ComputerPlayerAPI player = new ComputerPlayerAPI(symbol, mode, simple, "benchmark");
+            player.setApiUrl(stub.getUrl());
+            player.setCompactPrompts(compact);
+            players.add(player);
+            return player;
+        };
+        int httpRequests = stub.getRequestCount();
+        long start = System.nanoTime();
+        List<CompletableFuture<Character>> results = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            long seed = compact ? games + game : game; // Fresh openings, so the first run's cached moves stay unused
+            GameSession session = new GameSession(false, BOARD_SIZE, api, api);
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < OPENING_MOVES; i++) {
+                int cell = random.nextInt(BOARD_SIZE * BOARD_SIZE);
+                session.setUpMove(cell / BOARD_SIZE, cell % BOARD_SIZE, random.nextBoolean() ? 'S' : 'O');
+            }
+            session.addListener(new TurnTimer(turns, latencies));
+            session.start();
+            results.add(session.getResult());
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        httpRequests = stub.getRequestCount() - httpRequests;
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        int requests = 0;
+        int fallbacks = 0;
+        long inputTokens = 0;
+        long outputTokens = 0;
+        for (ComputerPlayerAPI player : players) {
+            requests += player.getRequestCount();
+            fallbacks += player.getFallbackCount();
+            inputTokens += player.getInputTokens();
+            outputTokens += player.getOutputTokens();
+        }
+        int asked = Math.max(1, requests);
+        System.out.println(compact ? "Compact prompt:" : "Full prompt:");
+        System.out.printf("  %d games, %d turns in %.1f s: %.1f turns/s%n", games, sorted.size(), seconds, sorted.size() / seconds);
+        System.out.printf("  Turn latency: p50 %d ms, p99 %d ms%n", percentile(sorted, 0.50), percentile(sorted, 0.99));
+        System.out.printf("  Tokens per position: %d in, %d out%n", inputTokens / asked, outputTokens / asked);
+        System.out.printf("  Requests: %d positions, %d HTTP requests, %d answered by the local engine (%.1f%%)%n",
+            requests, httpRequests, fallbacks, fallbacks * 100.0 / asked);
+    }
+
+    // Times each turn from the moment it falls to a side until that side's first move, and
+    // stops the game after the given number of turns. The sessions are closed but the players
+    // are not cleaned up, so the stub's answers never reach the move cache file.
+    private static final class TurnTimer implements GameSession.Listener {
+        private final int turns;
+        private final List<Long> latencies;
+        private long turnStart;
+        private boolean waiting; // The side to move has not played yet
+        private int played;
+
+        TurnTimer(int turns, List<Long> latencies) {
+            this.turns = turns;
+            this.latencies = latencies;
+        }
+
+        @Override
+        public void gameStarted(GameSession session) {
+            turnStart = System.nanoTime();
+            waiting = true;
+        }
+
+        @Override
+        public void movePlayed(GameSession session, int row, int col, char letter, char player,
+                List<GameModeBase.SOSSequence> sequences) {
+            if (waiting) {
+                latencies.add((System.nanoTime() - turnStart) / 1_000_000);
+                waiting = false;
+            }
+        }
+
+        @Override
+        public void turnChanged(GameSession session, char player, boolean again) {
+            if (again) {
+                return; // Same turn: the rest of a scoring chain
+            }
+            if (++played >= turns) {
+                session.close();
+            } else {
+                turnStart = System.nanoTime();
+                waiting = true;
+            }
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        return sorted.isEmpty() ? 0 : sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(sorted.size() * p) - 1));
+    }
+}
@@ -0,0 +1,204 @@
+package llm;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP client shared by all API players. One HTTP/2 client means one pooled connection
+ * (kept alive between requests and multiplexed by concurrent ones), so a new game or a new
+ * player does not pay for another TLS handshake.
+ *
+ * Requests pass a limiter before they are sent: at most maxConcurrent are in flight, and a
+ * token bucket keeps the start rate at requestsPerMinute with bursts of up to burst requests.
+ * Requests over those limits wait in FIFO order; once maxQueued are waiting, new requests
+ * fail straight away, so callers fall back instead of waiting behind a long queue.
+ */
+public final class ApiClient {
+    // Limits, read from the sos.api.concurrency, sos.api.rpm, sos.api.burst and sos.api.queue system properties
+    public static final int DEFAULT_MAX_CONCURRENT = Integer.getInteger("sos.api.concurrency", 4);
+    public static final int DEFAULT_REQUESTS_PER_MINUTE = Integer.getInteger("sos.api.rpm", 50);
+    public static final int DEFAULT_BURST = Integer.getInteger("sos.api.burst", 5);
+    public static final int DEFAULT_MAX_QUEUED = Integer.getInteger("sos.api.queue", 64);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static ApiClient shared;
+
+    private final HttpClient client;
+    private final ExecutorService executor; // Virtual threads: for the client and for waiting requests
+    private final Semaphore inFlight;
+    private final int maxQueued;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // Token bucket
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilled;
+
+    public ApiClient(int maxConcurrent, int requestsPerMinute, int burst, int maxQueued) {
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .executor(executor)
+            .build();
+        this.inFlight = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.maxQueued = maxQueued;
+        this.tokensPerNano = Math.max(1, requestsPerMinute) / 60e9;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refilled = System.nanoTime();
+    }
+
+    // Process-wide client shared by all API players
+    public static synchronized ApiClient shared() {
+        if (shared == null) {
+            shared = new ApiClient(DEFAULT_MAX_CONCURRENT, DEFAULT_REQUESTS_PER_MINUTE, DEFAULT_BURST, DEFAULT_MAX_QUEUED);
+        }
+        return shared;
+    }
+
+    /**
+     * Send a request once the limiter lets it through. The request holds its place among the
+     * in-flight requests until its body has been read, or its body stream closed. Cancelling
+     * the result takes a waiting request out of the queue, or cancels the exchange.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            result.completeExceptionally(new IOException("API request queue is full"));
+            return result;
+        }
+        Runnable leaveQueue = once(queued::decrementAndGet);
+        Future<?> waiting = executor.submit(() -> {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                return; // Cancelled while queued
+            } finally {
+                leaveQueue.run();
+            }
+            Runnable release = once(inFlight::release);
+            try {
+                takeToken();
+            } catch (InterruptedException e) {
+                release.run();
+                return;
+            }
+            if (result.isDone()) {
+                release.run();
+                return;
+            }
+            CompletableFuture<HttpResponse<T>> call = client.sendAsync(request, releasing(handler, release));
+            call.whenComplete((response, error) -> {
+                if (error != null) {
+                    release.run();
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(response);
+                }
+            });
+            result.whenComplete((response, error) -> {
+                if (result.isCancelled()) {
+                    call.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                leaveQueue.run();
+                waiting.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // Wait for a token from the bucket, which refills at the configured rate up to burst
+    private void takeToken() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                tokens = Math.min(burst, tokens + (now - refilled) * tokensPerNano);
+                refilled = now;
+                if (tokens >= 1) {
+                    tokens--;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static Runnable once(Runnable action) {
+        AtomicBoolean done = new AtomicBoolean();
+        return () -> {
+            if (done.compareAndSet(false, true)) {
+                action.run();
+            }
+        };
+    }
+
+    // Body handler that runs release when the body has been read, has failed, or is abandoned
+    private static <T> HttpResponse.BodyHandler<T> releasing(HttpResponse.BodyHandler<T> handler, Runnable release) {
+        return info -> {
+            HttpResponse.BodySubscriber<T> body = handler.apply(info);
+            return new HttpResponse.BodySubscriber<T>() {
+                @Override
+                public CompletionStage<T> getBody() {
+                    return body.getBody();
+                }
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    body.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                            subscription.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            release.run();
+                            subscription.cancel();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(List<ByteBuffer> item) {
+                    body.onNext(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    release.run();
+                    body.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    release.run();
+                    body.onComplete();
+                }
+            };
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package llm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * End-to-end check of MoveBatcher against StubApiServer: batched API players ask about
+ * different positions at once, and every one must get a legal move from the API itself, and
+ * tokens for it. Prints how many HTTP requests carried the positions and exits with status 1
+ * on any failure.
+ *
+ * Usage: java llm.BatchingBenchmark [positions]
+ */
+public final class BatchingBenchmark {
+    public static void main(String[] args) throws Exception {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 24;
+        StubApiServer stub = new StubApiServer(0);
+        stub.setLatency(100, 0.2);
+        stub.start();
+
+        List<ComputerPlayerAPI> players = new ArrayList<>();
+        List<CompletableFuture<Boolean>> legal = new ArrayList<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        SplittableRandom random = new SplittableRandom(positions);
+        int size = 6;
+        for (int i = 0; i < positions; i++) {
+            GameMode game = new GeneralGameMode(size);
+            char[][] board = new char[size][size];
+            for (char[] row : board) {
+                Arrays.fill(row, ' ');
+            }
+            for (int k = 0; k < 6; k++) { // A different position for each, so the move cache stays out of it
+                int cell = game.getEmptyCell(random.nextInt(game.getEmptyCellCount()));
+                game.makeMove(cell / size, cell % size, 'O'); // O's alone form no SOS
+                board[cell / size][cell % size] = 'O';
+            }
+            ComputerPlayerAPI player = new ComputerPlayerAPI('B', game, false, "stub");
+            player.setApiUrl(stub.getUrl());
+            player.setBatching(true);
+            player.setCompactPrompts(true);
+            players.add(player);
+            legal.add(CompletableFuture.supplyAsync(() -> {
+                ComputerPlayer.Move move = player.makeMove(game, board);
+                return move != null && board[move.row][move.col] == ' ';
+            }, executor));
+        }
+
+        boolean ok = true;
+        for (int i = 0; i < positions; i++) {
+            ComputerPlayerAPI player = players.get(i);
+            if (!legal.get(i).join() || player.getFallbackCount() > 0 || player.getInputTokens() == 0) {
+                System.out.println("Position " + (i + 1) + ": no legal API move or no tokens credited");
+                ok = false;
+            }
+        }
+        System.out.println(positions + " positions answered in " + stub.getRequestCount() + " HTTP requests: "
+            + (ok ? "ok" : "FAILED"));
+        stub.stop();
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,382 @@
+package llm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GameMode implementation that stores the board as packed bit sets instead of a char grid.
+ * Every row is one long for the 'S' cells and one long for the 'O' cells. Two guard columns
+ * and two guard rows surround the board, so the neighbour tests in SOS detection are plain
+ * shift/mask operations without bounds checks.
+ * Handles both simple mode (first SOS wins) and general mode (most SOS wins).
+ */
+public class BitboardGameMode implements GameMode {
+    private static final int GUARD = 2; // Guard bits/rows on each side of the board
+    public static final int MAX_BOARD_SIZE = Long.SIZE - 2 * GUARD;
+
+    // Direction vectors, in the same order as GameModeBase checks them
+    private static final int[] DIR_ROW = GameModeBase.DIR_ROW;
+    private static final int[] DIR_COL = GameModeBase.DIR_COL;
+    private static final int DIRECTIONS = GameModeBase.LINE_DIRECTIONS.length;
+
+    private final int boardSize;
+    private final boolean isSimpleMode;
+    private final long rowMask;  // Bits of the playable columns in a row word
+    private final long[] sRows;  // 'S' occupancy, indexed by row + GUARD
+    private final long[] oRows;  // 'O' occupancy, indexed by row + GUARD
+    private char currentPlayer;  // 'B' for Blue, 'R' for Red
+    private long hash;           // Zobrist key, same keys as GameModeBase
+    private int blueScore;
+    private int redScore;
+    private int sosMoves;        // Moves on the stack that formed an SOS; ends a simple game
+
+    // Live index of empty cells, as in GameModeBase: a dense array with swap-remove, plus each
+    // cell's slot in it, so getEmptyCell is a plain array read
+    private final int[] emptyCells;
+    private final int[] emptySlot;
+    private int emptyCount;
+
+    // Move stack used by undoMove(), one entry per move played
+    private final int[] moveStack;      // Cell of each move, row * boardSize + col
+    private final char[] moverStack;    // Player who made each move
+    private final int[] sequenceCodes;  // Up to four sequences per move, as start cell and direction index
+    private final byte[] sequenceCounts;
+    private int moveCount;
+
+    public BitboardGameMode(int boardSize, boolean isSimpleMode) {
+        if (boardSize < 1 || boardSize > MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("Board size must be between 1 and " + MAX_BOARD_SIZE + ": " + boardSize);
+        }
+        this.boardSize = boardSize;
+        this.isSimpleMode = isSimpleMode;
+        this.rowMask = ((1L << boardSize) - 1) << GUARD;
+        this.sRows = new long[boardSize + 2 * GUARD];
+        this.oRows = new long[boardSize + 2 * GUARD];
+        this.currentPlayer = 'B'; // Blue starts
+        this.emptyCells = new int[boardSize * boardSize];
+        this.emptySlot = new int[boardSize * boardSize];
+        for (int cell = 0; cell < boardSize * boardSize; cell++) {
+            emptyCells[cell] = cell;
+            emptySlot[cell] = cell;
+        }
+        this.emptyCount = boardSize * boardSize;
+        this.moveStack = new int[boardSize * boardSize];
+        this.moverStack = new char[boardSize * boardSize];
+        this.sequenceCodes = new int[boardSize * boardSize * DIRECTIONS];
+        this.sequenceCounts = new byte[boardSize * boardSize];
+    }
+
+    private BitboardGameMode(BitboardGameMode other) {
+        this.boardSize = other.boardSize;
+        this.isSimpleMode = other.isSimpleMode;
+        this.rowMask = other.rowMask;
+        this.sRows = other.sRows.clone();
+        this.oRows = other.oRows.clone();
+        this.currentPlayer = other.currentPlayer;
+        this.hash = other.hash;
+        this.blueScore = other.blueScore;
+        this.redScore = other.redScore;
+        this.sosMoves = other.sosMoves;
+        this.emptyCells = other.emptyCells.clone();
+        this.emptySlot = other.emptySlot.clone();
+        this.emptyCount = other.emptyCount;
+        this.moveStack = other.moveStack.clone();
+        this.moverStack = other.moverStack.clone();
+        this.sequenceCodes = other.sequenceCodes.clone();
+        this.sequenceCounts = other.sequenceCounts.clone();
+        this.moveCount = other.moveCount;
+    }
+
+    @Override
+    public BitboardGameMode copy() {
+        return new BitboardGameMode(this);
+    }
+
+    @Override
+    public boolean makeMove(int row, int col, char letter) {
+        if (!isValidMove(row, col) || (letter != 'S' && letter != 'O')) {
+            return false; // Invalid move
+        }
+        int r = row + GUARD;
+        int c = col + GUARD;
+        if (letter == 'S') {
+            sRows[r] |= 1L << c;
+        } else {
+            oRows[r] |= 1L << c;
+        }
+        removeEmptyCell(row * boardSize + col);
+        hash ^= Zobrist.cellKey(row * boardSize + col, letter);
+
+        moveStack[moveCount] = row * boardSize + col;
+        moverStack[moveCount] = currentPlayer;
+        int found = 0;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            found += checkDirection(r, c, letter, d, moveCount * DIRECTIONS + found);
+        }
+        sequenceCounts[moveCount] = (byte) found;
+        moveCount++;
+
+        if (found > 0) {
+            sosMoves++;
+            addScore(currentPlayer, found);
+        } else {
+            switchPlayer();
+        }
+        return found > 0;
+    }
+
+    @Override
+    public void undoMove() {
+        if (moveCount == 0) {
+            throw new IllegalStateException("No move to undo");
+        }
+        moveCount--;
+        int cell = moveStack[moveCount];
+        hash ^= Zobrist.cellKey(cell, getCell(cell / boardSize, cell % boardSize));
+        long clear = ~(1L << (cell % boardSize + GUARD));
+        sRows[cell / boardSize + GUARD] &= clear;
+        oRows[cell / boardSize + GUARD] &= clear;
+        restoreEmptyCell(cell);
+
+        if (currentPlayer != moverStack[moveCount]) {
+            switchPlayer();
+        }
+        int found = sequenceCounts[moveCount];
+        if (found > 0) {
+            sosMoves--;
+            addScore(currentPlayer, -found);
+        }
+    }
+
+    // Remove a cell from the empty index by moving the last entry into its slot.
+    // The removed cell keeps its old slot number so restoreEmptyCell() can put it back.
+    private void removeEmptyCell(int cell) {
+        int slot = emptySlot[cell];
+        int last = emptyCells[--emptyCount];
+        emptyCells[slot] = last;
+        emptySlot[last] = slot;
+    }
+
+    // Reverse removeEmptyCell(); only valid in LIFO order, as used by undoMove()
+    private void restoreEmptyCell(int cell) {
+        int slot = emptySlot[cell];
+        int moved = emptyCells[slot];
+        emptyCells[emptyCount] = moved;
+        emptySlot[moved] = emptyCount++;
+        emptyCells[slot] = cell;
+    }
+
+    // Scores only count in general mode; simple mode ends on the first SOS instead
+    private void addScore(char player, int points) {
+        if (isSimpleMode) {
+            return;
+        }
+        if (player == 'B') {
+            blueScore += points;
+        } else {
+            redScore += points;
+        }
+    }
+
+    @Override
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public int getMoveCell(int ply) {
+        return moveStack[ply];
+    }
+
+    // Check one direction through (r, c) in guarded coordinates; at most one SOS per direction.
+    // A found sequence is written at sequenceCodes[slot]. Returns the number found, 0 or 1.
+    private int checkDirection(int r, int c, char letter, int d, int slot) {
+        int dr = DIR_ROW[d];
+        int dc = DIR_COL[d];
+        if (letter == 'S') {
+            // Backward: current cell is the last 'S' in SOS
+            if ((oRows[r - dr] >>> (c - dc) & sRows[r - 2 * dr] >>> (c - 2 * dc) & 1L) != 0) {
+                return storeSequence(slot, r - 2 * dr, c - 2 * dc, d);
+            }
+            // Forward: current cell is the first 'S' in SOS
+            if ((oRows[r + dr] >>> (c + dc) & sRows[r + 2 * dr] >>> (c + 2 * dc) & 1L) != 0) {
+                return storeSequence(slot, r, c, d);
+            }
+        } else if ((sRows[r - dr] >>> (c - dc) & sRows[r + dr] >>> (c + dc) & 1L) != 0) {
+            // Middle: current cell is 'O' in SOS
+            return storeSequence(slot, r - dr, c - dc, d);
+        }
+        return 0;
+    }
+
+    private int storeSequence(int slot, int r, int c, int d) {
+        int cell = (r - GUARD) * boardSize + (c - GUARD);
+        sequenceCodes[slot] = GameModeBase.SOSSequence.pack(cell, d);
+        return 1;
+    }
+
+    // Check if a move is valid
+    private boolean isValidMove(int row, int col) {
+        return row >= 0 && row < boardSize
+                && col >= 0 && col < boardSize
+                && ((sRows[row + GUARD] | oRows[row + GUARD]) >>> (col + GUARD) & 1L) == 0;
+    }
+
+    // Get the letter at a cell, ' ' if empty or out of bounds
+    @Override
+    public char getCell(int row, int col) {
+        if (row < 0 || row >= boardSize || col < 0 || col >= boardSize) {
+            return ' ';
+        }
+        if ((sRows[row + GUARD] >>> (col + GUARD) & 1L) != 0) {
+            return 'S';
+        }
+        return (oRows[row + GUARD] >>> (col + GUARD) & 1L) != 0 ? 'O' : ' ';
+    }
+
+    // Bit mask of the empty cells in a row; bit i is column i
+    public long getEmptyMask(int row) {
+        return (~(sRows[row + GUARD] | oRows[row + GUARD]) & rowMask) >>> GUARD;
+    }
+
+    /**
+     * Writes the empty cells (row * boardSize + col) into the given array, in row-major order.
+     * The array must hold boardSize * boardSize entries. Returns the number of cells written.
+     */
+    public int getEmptyCells(int[] cells) {
+        int count = 0;
+        for (int row = 0; row < boardSize; row++) {
+            long empty = getEmptyMask(row);
+            while (empty != 0) {
+                cells[count++] = row * boardSize + Long.numberOfTrailingZeros(empty);
+                empty &= empty - 1; // Clear the lowest set bit
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getEmptyCellCount() {
+        return emptyCount;
+    }
+
+    @Override
+    public int getEmptyCell(int index) {
+        return emptyCells[index];
+    }
+
+    // Threat counts come straight from the row masks; there is no map to keep up to date
+    @Override
+    public int getCompletionCount(int cell, char letter) {
+        return threatCounts(cell, letter, true);
+    }
+
+    @Override
+    public int getSetupCount(int cell, char letter) {
+        return threatCounts(cell, letter, false);
+    }
+
+    private int threatCounts(int cell, char letter, boolean completions) {
+        int r = cell / boardSize + GUARD;
+        int c = cell % boardSize + GUARD;
+        if (!isEmpty(r, c)) {
+            return 0;
+        }
+        int count = 0;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            int dr = DIR_ROW[d];
+            int dc = DIR_COL[d];
+            if (letter == 'S') {
+                // 'S' as the last or the first letter of the line
+                long back = oRows[r - dr] >>> (c - dc) & sRows[r - 2 * dr] >>> (c - 2 * dc) & 1L;
+                long forward = oRows[r + dr] >>> (c + dc) & sRows[r + 2 * dr] >>> (c + 2 * dc) & 1L;
+                if (completions) {
+                    count += (int) (back | forward); // At most one SOS per direction
+                } else {
+                    count += isSetup(oRows, r - dr, c - dc, sRows, r - 2 * dr, c - 2 * dc)
+                        + isSetup(oRows, r + dr, c + dc, sRows, r + 2 * dr, c + 2 * dc);
+                }
+            } else if (completions) {
+                // 'O' in the middle
+                count += (int) (sRows[r - dr] >>> (c - dc) & sRows[r + dr] >>> (c + dc) & 1L);
+            } else {
+                count += isSetup(sRows, r - dr, c - dc, sRows, r + dr, c + dc);
+            }
+        }
+        return count;
+    }
+
+    // 1 if one of the two cells holds its SOS letter and the other one is empty
+    private int isSetup(long[] firstRows, int r1, int c1, long[] secondRows, int r2, int c2) {
+        boolean first = (firstRows[r1] >>> c1 & 1L) != 0;
+        boolean second = (secondRows[r2] >>> c2 & 1L) != 0;
+        return (first && isEmpty(r2, c2)) || (second && isEmpty(r1, c1)) ? 1 : 0;
+    }
+
+    // Empty playable cell in guarded coordinates; guard cells are never empty
+    private boolean isEmpty(int r, int c) {
+        return r >= GUARD && r < boardSize + GUARD
+            && ((~(sRows[r] | oRows[r]) & rowMask) >>> c & 1L) != 0;
+    }
+
+    @Override
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    @Override
+    public char getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    @Override
+    public void switchPlayer() {
+        currentPlayer = (currentPlayer == 'B') ? 'R' : 'B';
+        hash ^= Zobrist.SIDE_KEY;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public int getBlueScore() {
+        return blueScore;
+    }
+
+    @Override
+    public int getRedScore() {
+        return redScore;
+    }
+
+    @Override
+    public boolean isGameOver() {
+        return (isSimpleMode && sosMoves > 0) || isBoardFull();
+    }
+
+    private boolean isBoardFull() {
+        return emptyCount == 0;
+    }
+
+    @Override
+    public int getLastMoveSequenceCount() {
+        return moveCount > 0 ? sequenceCounts[moveCount - 1] : 0;
+    }
+
+    @Override
+    public int getLastMoveSequenceCode(int index) {
+        return sequenceCodes[(moveCount - 1) * DIRECTIONS + index];
+    }
+
+    // Builds the sequence objects on demand; the move itself only records packed codes
+    @Override
+    public List<GameModeBase.SOSSequence> getLastMoveSequences() {
+        int count = getLastMoveSequenceCount();
+        List<GameModeBase.SOSSequence> sequences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sequences.add(GameModeBase.SOSSequence.unpack(getLastMoveSequenceCode(i), boardSize));
+        }
+        return sequences;
+    }
+}
@@ -3,45 +3,34 @@ package llm;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.List;
 
 import javax.swing.*;
-import java.util.List;
 import javax.swing.Timer;
 
-public class Board {
-    private String currentPlayer; // "Blue" or "Red"
-    private int boardSize;
-    private GUI gui;
+public class Board implements GameSession.Listener {
     private boolean isSimpleMode;
-    private GameMode gameMode;
-    private ComputerPlayer blueComputer;
-    private ComputerPlayer redComputer;
-    private Timer computerMoveTimer;
-    private boolean gameInProgress;
+    private GUI gui;
+    private GameSession session; // Game on the board, null before the first one
     private BoardHelpers helpers; // Helper methods for board operations
     
     private GameRecordService recorder;
     private boolean isRecording;
-    private boolean isReplaying;
-    private GameRecord replayGame;
-    private int replayMoveIndex;
     private Timer replayTimer;
 
     private static final String CLAUDE_API_KEY = "api_key_here";
+    private static final int COMPUTER_DELAY_MILLIS = 600; // Pause before each computer turn
    
-    // Initializes computer players based on user selection
-    private void initializeComputerPlayers() {
-        if (gui.getBlueComputer().isSelected()) {
-            blueComputer = new ComputerPlayerAPI('B', gameMode, isSimpleMode, CLAUDE_API_KEY);
-        }
-        if (gui.getRedComputer().isSelected()) {
-            redComputer = new ComputerPlayerAPI('R', gameMode, isSimpleMode, CLAUDE_API_KEY);
+    // Computer player for a side set to Computer, null for a human side
+    private GameSession.PlayerFactory playerFor(JRadioButton computer) {
+        if (!computer.isSelected()) {
+            return null;
         }
+        return (symbol, mode, simple) -> new HybridComputerPlayer(symbol, mode, simple, CLAUDE_API_KEY);
     }
     
     public Board(GUI gui) {
         this.gui = gui;
-        this.gameInProgress =false;
         this.helpers = new BoardHelpers(this, gui);
         
         this.recorder = new GameRecordService();
@@ -54,7 +43,7 @@ public class Board {
         gui.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                if (isRecording && gameInProgress) {
+                if (isRecording && isGameInProgress()) {
                     int choice = JOptionPane.showConfirmDialog(
                         gui,
                         "Do you want to save the current game before exiting?",
@@ -67,20 +56,12 @@ public class Board {
                     }
                     
                     if (choice == JOptionPane.YES_OPTION) {
-                        recorder.interruptRecording(
-                            gameMode.getBlueScore(),
-                            gameMode.getRedScore()
-                        );
+                        session.interruptRecording();
                     }
                 }
                 
-                // Add cleanup for Claude API
-                if (blueComputer instanceof ComputerPlayerAPI) {
-                    ((ComputerPlayerAPI) blueComputer).cleanup();
-                }
-                if (redComputer instanceof ComputerPlayerAPI) {
-                    ((ComputerPlayerAPI) redComputer).cleanup();
-                }
+                closeSession(); // Stops the computers and saves the Claude API players' caches
+                ExactSolver.saveAll(); // Keep solved positions for the next session
                 
                 gui.dispose(); // Close the window
                 System.exit(0); // Exit the application
@@ -89,7 +70,7 @@ public class Board {
         
         // Action listener for New Game button to generate the game board
         gui.getBtnNewGame().addActionListener(e -> {
-            if (isRecording && gameInProgress) {
+            if (isRecording && isGameInProgress()) {
                 // Ask user if they want to save the current game
                 int choice = JOptionPane.showConfirmDialog(
                     gui,
@@ -98,20 +79,13 @@ public class Board {
                     JOptionPane.YES_NO_OPTION
                 );
                 if (choice == JOptionPane.YES_OPTION) {
-                    recorder.interruptRecording(
-                        gameMode.getBlueScore(),
-                        gameMode.getRedScore()
-                    );
+                    session.interruptRecording();
                 }
             }
             isSimpleMode = gui.getSimpleGame().isSelected();
             generateGameBoard();
         });
         
-        // Initialize computer move timer with 600ms delay
-        computerMoveTimer = new Timer(600, e -> makeComputerMove());
-        computerMoveTimer.setRepeats(false);
-        
         // Add listener for record checkbox
         gui.getRecordGameCheckBox().addActionListener(e -> {
             isRecording = gui.getRecordGameCheckBox().isSelected();
@@ -123,143 +97,154 @@ public class Board {
 
     // Method to generate the game board based on the input size
     private void generateGameBoard() {
+        int boardSize;
         try {
-            // First, set the board size and game mode
-            if (!isReplaying) {
-                // Get board size from input for new games
-                boardSize = Integer.parseInt(gui.getBoardSizeField().getText());
-                
-                // Validate board size based on game mode
-                if (isSimpleMode) {
-                    if (boardSize != 3) {    
-                        boardSize = 3; 
-                        JOptionPane.showMessageDialog(gui, "Invalid board size. Defaulting to 3x3.", "Error", JOptionPane.ERROR_MESSAGE);
-                    }
-                    gameMode = new SimpleGameMode();    
-                } else {
-                    if (boardSize < 4 || boardSize > 8) {
-                        boardSize = 8;
-                        JOptionPane.showMessageDialog(gui, "Invalid board size. Board size must be between 4-8. Defaulting to 8x8.", "Error", JOptionPane.ERROR_MESSAGE);
-                    }
-                    gameMode = new GeneralGameMode(boardSize);
+            // Get board size from input for new games
+            boardSize = Integer.parseInt(gui.getBoardSizeField().getText());
+            
+            // Validate board size based on game mode
+            if (isSimpleMode) {
+                if (boardSize != 3) {    
+                    boardSize = 3; 
+                    JOptionPane.showMessageDialog(gui, "Invalid board size. Defaulting to 3x3.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
             } else {
-                // Use recorded settings for replay
-                boardSize = replayGame.getBoardSize();
-                if (isSimpleMode) {
-                    gameMode = new SimpleGameMode();
-                } else {
-                    gameMode = new GeneralGameMode(boardSize);
+                if (boardSize < 4 || boardSize > 8) {
+                    boardSize = 8;
+                    JOptionPane.showMessageDialog(gui, "Invalid board size. Board size must be between 4-8. Defaulting to 8x8.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
             }
+        } catch (NumberFormatException ex) {
+            boardSize = isSimpleMode ? 3 : 8;
+            JOptionPane.showMessageDialog(gui, "Error with board size. Using default size.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
 
-            // Start recording after board size is properly set
-            if (isRecording && !isReplaying) {
-                String blueType = gui.getBlueComputer().isSelected() ? "Computer" : "Human";
-                String redType = gui.getRedComputer().isSelected() ? "Computer" : "Human";              
-                recorder.startRecording(isSimpleMode, boardSize, blueType, redType);
-            }
-            
-            gameInProgress = true;
-            currentPlayer = "Blue";
-            initializeComputerPlayers();
+        GameSession game = new GameSession(isSimpleMode, boardSize,
+            playerFor(gui.getBlueComputer()), playerFor(gui.getRedComputer()));
+        game.setComputerDelay(COMPUTER_DELAY_MILLIS);
+        if (isRecording) {
+            game.setRecorder(recorder);
+        }
+        show(game);
+    }
 
-            // Generate the game board on the GUI
-            gui.getBoardPanel().removeAll();
-            gui.getBoardPanel().setLayout(new GridLayout(boardSize, boardSize));
+    // Shows a new game on the board and starts it; the game shown before is stopped
+    private void show(GameSession game) {
+        closeSession(); // A move for the old game must never land on the new board
+        session = game;
+        game.setEventExecutor(SwingUtilities::invokeLater); // Computer turns are applied on the EDT
+        game.addListener(this);
 
-            // Create buttons for each cell
-            for (int row = 0; row < boardSize; row++) {
-                for (int col = 0; col < boardSize; col++) {
-                    GameButton button = new GameButton(" ");
-                    button.setFont(new Font("Arial", Font.BOLD, 35));
-                    int finalRow = row;
-                    int finalCol = col;
-                    button.addActionListener(e -> handleButtonClick(button, finalRow, finalCol));
-                    gui.getBoardPanel().add(button);
-                }
+        // Generate the game board on the GUI
+        int boardSize = game.getBoardSize();
+        gui.getBoardPanel().removeAll();
+        gui.getBoardPanel().setLayout(new GridLayout(boardSize, boardSize));
+
+        // Create buttons for each cell
+        for (int row = 0; row < boardSize; row++) {
+            for (int col = 0; col < boardSize; col++) {
+                GameButton button = new GameButton(" ");
+                button.setFont(new Font("Arial", Font.BOLD, 35));
+                int finalRow = row;
+                int finalCol = col;
+                button.addActionListener(e -> handleButtonClick(finalRow, finalCol));
+                gui.getBoardPanel().add(button);
             }
+        }
 
-            gui.getBoardPanel().revalidate();
-            gui.getBoardPanel().repaint();
+        gui.getBoardPanel().revalidate();
+        gui.getBoardPanel().repaint();
+        game.start();
+    }
 
-            gui.updateTurnLabel(currentPlayer);
-            gui.updateScores(0, 0);
-            
-            if (!isReplaying && gui.getBlueComputer().isSelected()) {
-                computerMoveTimer.start();
-            }
-            
-        } catch (NumberFormatException ex) {
-            if (!isReplaying) {
-                if (isSimpleMode) {
-                    boardSize = 3;  
-                    gameMode = new SimpleGameMode();
-                } else {
-                    boardSize = 8;  
-                    gameMode = new GeneralGameMode(boardSize);
-                }
-                JOptionPane.showMessageDialog(gui, "Error with board size. Using default size.", "Error", JOptionPane.ERROR_MESSAGE);
+    @Override
+    public void gameStarted(GameSession game) {
+        gui.updateTurnLabel(GameSession.playerName(game.getCurrentPlayer()));
+        gui.updateScores(0, 0);
+    }
+
+    // Shows a placed letter and the SOS lines it formed
+    @Override
+    public void movePlayed(GameSession game, int row, int col, char letter, char player,
+            List<GameModeBase.SOSSequence> sequences) {
+        if (game != session) {
+            return; // From a game no longer shown
+        }
+        Color color = player == 'B' ? Color.BLUE : Color.RED;
+        GameButton button = helpers.getButtonAt(row, col);
+        if (button != null) {
+            button.setText(String.valueOf(letter));
+            button.setForeground(color);
+        }
+        if (!sequences.isEmpty()) {
+            helpers.drawSOSLines(sequences, color);
+            if (!isSimpleMode) {
+                helpers.updateScores();
             }
-        }    
+        }
     }
-    
-    
-    // Makes a move for the computer player when it's their turn
-    private void makeComputerMove() {
-        if (!gameInProgress) return;
 
-        boolean isBlueComputer = currentPlayer.equals("Blue") && gui.getBlueComputer().isSelected();
-        boolean isRedComputer = currentPlayer.equals("Red") && gui.getRedComputer().isSelected();
+    @Override
+    public void turnChanged(GameSession game, char player, boolean again) {
+        if (game == session) {
+            gui.updateTurnLabel(GameSession.playerName(player));
+        }
+    }
 
-        if (isBlueComputer || isRedComputer) {
-            ComputerPlayer currentComputerPlayer = isBlueComputer ? blueComputer : redComputer;
-            char[][] boardState = getCurrentBoardState();
-            
-            ComputerPlayer.Move move = currentComputerPlayer.makeMove(boardState);
-            if (move != null) {
-                GameButton button = helpers.getButtonAt(move.row, move.col);
-                if (button != null) {
-                    button.setText(String.valueOf(move.letter));
-                    button.setForeground(helpers.currentPlayerColor());
-                    
-                    // Record computer's move before processing
-                    if (isRecording) {
-                        recorder.recordMove(move.row, move.col, move.letter, currentPlayer);
-                    }
-                    
-                    processMove(button, move.row, move.col, move.letter, true);
-                }
+    // Displays the winner or draw and disables the game board
+    @Override
+    public void gameOver(GameSession game, char winner) {
+        if (game != session) {
+            return;
+        }
+        if (isSimpleMode && winner != ' ') {
+            if (!game.isReplaying()) {
+                JOptionPane.showMessageDialog(gui, GameSession.playerName(winner) + " Player" + " wins!", "Game Over", JOptionPane.INFORMATION_MESSAGE);
             }
+        } else if (isSimpleMode) {
+            JOptionPane.showMessageDialog(gui, "Game Over! It's a draw.", "Game Over", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            String message = determineWinner(game.getBlueScore(), game.getRedScore());
+            JOptionPane.showMessageDialog(gui, message, "Game Over", JOptionPane.INFORMATION_MESSAGE);
         }
+        helpers.disableBoard();
     }
     
-    // Retrieves the current state of the game board
-    private char[][] getCurrentBoardState() {
-    	char[][] board = new char[boardSize][boardSize];
-    	for(int i =0; i < boardSize; i++) {
-    		for (int j = 0; j < boardSize; j++) {
-    			GameButton button = helpers.getButtonAt(i, j);
-    			board[i][j] = button.getText().charAt(0);
-    		}
-    	}
-    	return board;
+    // The local engine stands in for a computer player whose turn failed
+    @Override
+    public void turnFailed(GameSession game, char player, String reason) {
+        System.err.println(GameSession.playerName(player) + " computer move failed (" + reason + "), using the local engine");
+    }
+
+    // A computer player had no move at all; the game can't go on
+    @Override
+    public void gameAborted(GameSession game, String reason) {
+        if (game != session) {
+            return;
+        }
+        JOptionPane.showMessageDialog(gui, "The computer player could not move: " + reason, "Game Stopped", JOptionPane.ERROR_MESSAGE);
+        helpers.disableBoard();
+    }
+
+    // Stops the game shown and lets its Claude API players save their caches
+    private void closeSession() {
+        if (session == null) {
+            return;
+        }
+        session.close();
+        for (ComputerPlayer computer : new ComputerPlayer[]{session.getBlueComputer(), session.getRedComputer()}) {
+            if (computer instanceof ComputerPlayerAPI) {
+                ((ComputerPlayerAPI) computer).cleanup();
+            }
+        }
     }
     
     // Handles moves when a cell is clicked by human player
-    private void handleButtonClick(GameButton button, int row, int col) {
-        if (!gameInProgress) return;
-        
-        // Check if it's a human player's turn
-        boolean isHumanTurn = (currentPlayer.equals("Blue") && gui.getBlueHuman().isSelected()) ||
-                             (currentPlayer.equals("Red") && gui.getRedHuman().isSelected());
+    private void handleButtonClick(int row, int col) {
+        if (!isGameInProgress() || session.isReplaying() || session.isComputerTurn()) return;
         
-        if (isHumanTurn && button.getText().equals(" ")) {
-            char selectedLetter = helpers.getCurrentSelectedLetter();
-            button.setText(String.valueOf(selectedLetter));
-            button.setForeground(helpers.currentPlayerColor());
-            processMove(button, row, col, selectedLetter, false);
-        }
+        char selectedLetter = helpers.getCurrentSelectedLetter();
+        session.play(row, col, selectedLetter);
     }
     
     
@@ -269,7 +254,7 @@ public class Board {
      * Loads the selected game 
      */
     private void startReplay() {
-        if (gameInProgress) return; // Prevent replay while a game is being played
+        if (isGameInProgress()) return; // Prevent replay while a game is being played
         
         String[] games = recorder.listRecordedGames(); // Gets list of saved games
         if (games.length == 0) {
@@ -290,17 +275,16 @@ public class Board {
         
         // Load and setup the selected game if one was chosen
         if (selected != null) {
-            replayGame = recorder.loadGame(selected);
+            GameRecord replayGame = recorder.loadGame(selected);
             if (replayGame != null) {
-                setupReplay();
+                setupReplay(replayGame);
             } 
         }
     }
 
-    private void setupReplay() {   	
-        // Set game mode and board size according to recorded game
+    private void setupReplay(GameRecord replayGame) {   	
+        // Set game mode according to recorded game
         isSimpleMode = replayGame.isSimpleMode();
-        boardSize = replayGame.getBoardSize();
         
         // update GUI to reflect the recored game mode
         gui.getSimpleGame().setSelected(isSimpleMode);
@@ -313,11 +297,9 @@ public class Board {
         gui.getRedComputer().setSelected(replayGame.getRedPlayerType().equals("Computer"));
         
         // Create new board with recorded settings
-        isReplaying = true;  
-        generateGameBoard();
+        show(GameSession.replay(replayGame));
         
         // Start replay 
-        replayMoveIndex = 0;
         replayTimer.start();
         
         // Disable controls during loading
@@ -326,80 +308,20 @@ public class Board {
     }
 
     private void playNextReplayMove() {
-    	// check if replay is complete
-        if (replayMoveIndex >= replayGame.getMoves().size()) {
+    	// Apply the next move; check if replay is complete
+        if (!session.replayNext()) {
             replayTimer.stop();
-            isReplaying = false;
             gui.getBtnNewGame().setEnabled(true);
             gui.getRecordGameCheckBox().setEnabled(true);
             
             // Update final scores for general game mode
             if (!isSimpleMode) {
-                int recordedBlueScore = replayGame.getFinalBlueScore();
-                int recordedRedScore = replayGame.getFinalRedScore();
-                gui.updateScores(recordedBlueScore, recordedRedScore);
+                GameRecord replayGame = session.getReplayGame();
+                gui.updateScores(replayGame.getFinalBlueScore(), replayGame.getFinalRedScore());
             }
-            return;
-        }
-        
-        //  Apply the next move
-        GameRecord.Move move = replayGame.getMoves().get(replayMoveIndex++);
-        GameButton button = helpers.getButtonAt(move.getRow(), move.getCol());
-        if (button != null) {
-            button.setText(String.valueOf(move.getLetter()));
-            button.setForeground(move.getPlayer().equals("Blue") ? Color.BLUE : Color.RED);
-            processMove(button, move.getRow(), move.getCol(), move.getLetter(), false);
+            closeSession(); // Done: another game or replay may start
         }
     } 
-    
-
-    // Processes a move made by a player, updating the game state, handles SOS formation and turn switching
-    private void processMove(GameButton button, int row, int col, char letter, boolean isComputerMove) {
-        boolean sosFormed = gameMode.makeMove(row, col, letter);
-        List<GameModeBase.SOSSequence> sosSequences = gameMode.getLastMoveSequences();
-
-        if (isRecording && !isComputerMove) {
-            recorder.recordMove(row, col, letter, currentPlayer);
-        }   
-        
-        if (sosFormed) {
-            helpers.drawSOSLines(sosSequences);
-            
-            if (!isSimpleMode) {
-                helpers.updateScores();
-                gui.updateTurnLabel(currentPlayer + " (Another turn)");
-            } else {
-            	if (!isReplaying) {
-            		JOptionPane.showMessageDialog(gui, currentPlayer + " Player" + " wins!", "Game Over", JOptionPane.INFORMATION_MESSAGE);		
-            	}
-                endGame();
-                return;
-            }
-        } else {
-            helpers.switchPlayer();
-        }
-
-        gui.updateTurnLabel(currentPlayer);
-
-        if (gameMode.isGameOver()) {
-            handleGameOver();
-        } else if (!isReplaying && isComputerTurn()) {
-            computerMoveTimer.start();
-        }    
-    }
-
-    // Handles game over conditions and display the winner or draw
-    private void handleGameOver() {
-        if (isSimpleMode) {
-            JOptionPane.showMessageDialog(gui, "Game Over! It's a draw.", "Game Over", JOptionPane.INFORMATION_MESSAGE);
-        } else {
-            int blueScore = gameMode.getBlueScore();
-            int redScore = gameMode.getRedScore();
-            String winner = determineWinner(blueScore, redScore);
-            JOptionPane.showMessageDialog(gui, winner, "Game Over", JOptionPane.INFORMATION_MESSAGE);
-        }
-        endGame();
-    }
 
     // Determines the winner based on the scores in general game mode
     private String determineWinner(int blueScore, int redScore) {
@@ -412,56 +334,20 @@ public class Board {
         }
     }
 
-    // Checks if current turn belongs to a computer player
-    private boolean isComputerTurn() {
-        return (currentPlayer.equals("Blue") && gui.getBlueComputer().isSelected()) ||
-               (currentPlayer.equals("Red") && gui.getRedComputer().isSelected());
-    }
-
-    // Ends the game and disabling the game board
-    private void endGame() {
-    	if (isRecording) {
-            recorder.endRecording(
-                gameMode.getBlueScore(),
-                gameMode.getRedScore()
-            );
-        }
-    	
-        gameInProgress = false;
-        computerMoveTimer.stop();
-        helpers.disableBoard();
+    private boolean isGameInProgress() {
+        return session != null && session.isGameInProgress();
     }
     
-    // Getters and setters needed by BoardHelpers
-    public ComputerPlayer getBlueComputer() {
-        return blueComputer;
-    }
-
-    public ComputerPlayer getRedComputer() {
-        return redComputer;
+    // Getters needed by BoardHelpers
+    public GameSession getSession() {
+        return session;
     }
     
     public String getCurrentPlayer() {
-        return currentPlayer;
-    }
-
-    public void setCurrentPlayer(String player) {
-        this.currentPlayer = player;
+        return GameSession.playerName(session.getCurrentPlayer());
     }
 
     public int getBoardSize() {
-        return boardSize;
-    }
-
-    public void setBoardSize(int size) {
-        this.boardSize = size;
-    }
-
-    public GameMode getGameMode() {
-        return gameMode;
-    }
-
-    public void setGameMode(GameMode mode) {
-        this.gameMode = mode;
+        return session.getBoardSize();
     }
-}
\ No newline at end of file
+}
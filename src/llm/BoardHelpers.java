@@ -17,12 +17,6 @@ public class BoardHelpers {
         this.gui = gui;
     }
 
-    // Switches the current player to the next player
-    public void switchPlayer() {
-        board.setCurrentPlayer(board.getCurrentPlayer().equals("Blue") ? "Red" : "Blue");
-        gui.updateTurnLabel(board.getCurrentPlayer());
-    }
-
     // Get the current selected letter based on the current player's selection
     public char getCurrentSelectedLetter() {
         char selectedLetter;
@@ -40,15 +34,14 @@ public class BoardHelpers {
         return board.getCurrentPlayer().equals("Blue") ? Color.BLUE : Color.RED;
     }
 
-    // Draw lines over the SOS sequences
-    public void drawSOSLines(List<GameModeBase.SOSSequence> sequences) {
+    // Draw lines over the SOS sequences in the color of the player who formed them
+    public void drawSOSLines(List<GameModeBase.SOSSequence> sequences, Color color) {
         for (GameModeBase.SOSSequence sequence : sequences) {
             GameButton firstButton = getButtonAt(sequence.row1, sequence.col1);
             GameButton secondButton = getButtonAt(sequence.row2, sequence.col2);
             GameButton thirdButton = getButtonAt(sequence.row3, sequence.col3);
 
             if (firstButton != null && secondButton != null && thirdButton != null) {
-                Color color = currentPlayerColor();
                 GameButton.Line line = new GameButton.Line(color, sequence.direction);
                 firstButton.addLine(line);
                 secondButton.addLine(line);
@@ -85,8 +78,8 @@ public class BoardHelpers {
 
     // Update scores on the GUI
     public void updateScores() {
-        int blueScore = board.getGameMode().getBlueScore();
-        int redScore = board.getGameMode().getRedScore();
+        int blueScore = board.getSession().getBlueScore();
+        int redScore = board.getSession().getRedScore();
         gui.updateScores(blueScore, redScore);
     }
 }
\ No newline at end of file
@@ -3,12 +3,57 @@ package llm;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ComputerPlayer {
     private Random random;
     protected char playerSymbol; // 'B' for Blue, 'R' for Red    
 	private GameMode gameMode;
     protected boolean isSimpleMode;
+    private boolean parallelEvaluation = DEFAULT_PARALLEL_EVALUATION; // Split candidate evaluation across the fork/join pool
+    private boolean exactPlay = DEFAULT_EXACT_PLAY;
+    private int endgameThreshold = DEFAULT_ENDGAME_CELLS;
+    private long endgameTimeCapMillis = DEFAULT_ENDGAME_MILLIS;
+    private AlphaBetaComputerPlayer endgameSearch; // Created on the first endgame position
+    private boolean pondering;
+    private List<PonderLine> ponderLines = List.of(); // Replies being searched on the opponent's time
+    private CompletableFuture<Void> ponderJob = CompletableFuture.completedFuture(null); // Cancel to interrupt pondering
+    // Completes when the last background job on this player has returned. Jobs run one at a
+    // time, since the engines keep their search state in fields.
+    private CompletableFuture<Void> lastJob = CompletableFuture.completedFuture(null);
+
+    // General-mode endgame: positions with at most this many empty cells are searched to the end,
+    // read from the sos.endgame.cells and sos.endgame.ms system properties
+    public static final int DEFAULT_ENDGAME_CELLS = Integer.getInteger("sos.endgame.cells", 12);
+    public static final long DEFAULT_ENDGAME_MILLIS = Long.getLong("sos.endgame.ms", 500);
+
+    // Solve General-mode boards up to 4x4 outright on every move, read from the sos.exact system
+    // property. Off by default: a solve from the empty 4x4 board takes seconds. Results saved by
+    // ExactSolver (java llm.ExactSolver 4) are looked up either way.
+    public static final boolean DEFAULT_EXACT_PLAY = Boolean.getBoolean("sos.exact");
+
+    // Pondering: search replies to the opponent's likeliest moves during the opponent's turn,
+    // read from the sos.ponder system property. Off by default: the local engine answers in
+    // well under a millisecond, so searching ahead only burns CPU.
+    public static final boolean DEFAULT_PONDERING = Boolean.getBoolean("sos.ponder");
+    private static final int PONDER_CANDIDATES = 3; // Opponent moves a reply is prepared for
+
+    // Fork/join evaluation of the candidate moves, read from the sos.parallel system property
+    public static final boolean DEFAULT_PARALLEL_EVALUATION = Boolean.getBoolean("sos.parallel");
+
+    private static final int FULL_SOLVE_BOARD_SIZE = 4; // General-mode boards solved exactly from any position
+    private static final int PARALLEL_CELLS_PER_TASK = 8; // Empty cells evaluated by one fork/join leaf
+    private static final char[] LETTERS = {'S', 'O'};
+
+    // Move evaluation weights
+    private static final int COMPLETE_SCORE = 100;
+    private static final int SETUP_SCORE = 50;
+    private static final int BLOCK_SCORE = 75;
 
     // Make Move class public and static
     public static class Move {
@@ -23,152 +68,408 @@ public class ComputerPlayer {
             this.letter = letter;
             this.score = score;
         }
+
+        // Compact int form used by the search engines: the cell (row * boardSize + col)
+        // shifted left by one, with the low bit set for 'O'
+        public static int encode(int cell, char letter) {
+            return cell << 1 | (letter == 'O' ? 1 : 0);
+        }
+
+        public static int cellOf(int code) {
+            return code >>> 1;
+        }
+
+        public static char letterOf(int code) {
+            return (code & 1) == 0 ? 'S' : 'O';
+        }
     }
 
     public ComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode) {
+        this(playerSymbol, gameMode, isSimpleMode, DEFAULT_PONDERING);
+    }
+
+    // For players whose default differs from sos.ponder
+    protected ComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode, boolean pondering) {
+        this.pondering = pondering;
         this.random = new Random();
         this.playerSymbol = playerSymbol;
         this.gameMode = gameMode;
         this.isSimpleMode = isSimpleMode;
+        if (isSimpleMode) {
+            SimpleModeTable.shared(); // Load the perfect-play table before the first move
+        }
     }
 
     // Make a move based on the current board state
     public Move makeMove(char[][] board) {
-        List<Move> possibleMoves = new ArrayList<>();
-        
-        // Check all possible moves
+        return makeMove(gameMode, board);
+    }
+
+    /**
+     * Plan a whole turn: a move, and while each move forms an SOS and the game goes on, the
+     * follow-up moves of the same player. The last move is the one that passes the turn or
+     * ends the game. The state and board are not changed.
+     */
+    public List<Move> makeTurn(GameMode state, char[][] board) {
+        GameMode next = state.copy();
+        char[][] nextBoard = copyBoard(board);
+        List<Move> turn = new ArrayList<>();
+        Move move;
+        while ((move = makeMove(next, nextBoard)) != null) {
+            turn.add(move);
+            if (!playWithinTurn(next, nextBoard, move)) {
+                break;
+            }
+        }
+        return turn;
+    }
+
+    // Play a planned move on scratch copies of the game; true if the same player moves again
+    protected static boolean playWithinTurn(GameMode state, char[][] board, Move move) {
+        board[move.row][move.col] = move.letter;
+        return state.makeMove(move.row, move.col, move.letter) && !state.isGameOver();
+    }
+
+    protected static char[][] copyBoard(char[][] board) {
+        char[][] copy = new char[board.length][];
         for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board.length; j++) {
-                if (board[i][j] == ' ') {
-                    // Try 'S'
-                    int sScore = evaluateMove(board, i, j, 'S');
-                    possibleMoves.add(new Move(i, j, 'S', sScore));
-                    
-                    // Try 'O'
-                    int oScore = evaluateMove(board, i, j, 'O');
-                    possibleMoves.add(new Move(i, j, 'O', oScore));
-                }
+            copy[i] = board[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Plan a turn (see makeTurn) on the executor instead of the calling thread. The state should
+     * be a copy the caller no longer changes. Cancelling the returned future interrupts the
+     * computation, which also aborts a blocking API call.
+     * If the position was pondered, the turn found (or still being found) for it is returned;
+     * any other pondering is stopped, so the new search does not wait behind a wrong guess.
+     */
+    public CompletableFuture<List<Move>> makeTurnAsync(GameMode state, char[][] board, ExecutorService executor) {
+        CompletableFuture<List<Move>> pondered = null;
+        for (PonderLine line : ponderLines) {
+            // A line still queued behind other guesses is searched afresh instead
+            if (line.hash == state.getHash() && !line.reply.isCancelled() && (line.started || line.reply.isDone())) {
+                pondered = line.reply;
+            } else {
+                line.reply.cancel(false); // The opponent played something else
             }
         }
+        ponderLines = List.of();
+        if (pondered == null || pondered.isDone()) {
+            ponderJob.cancel(true); // Nothing more of use is coming from it
+        }
+        if (pondered != null) {
+            return pondered;
+        }
 
-        // Choose the best move
-        return getBestMove(possibleMoves);
+        CompletableFuture<List<Move>> result = new CompletableFuture<>();
+        schedule(executor, result, () -> {
+            try {
+                result.complete(makeTurn(state, board));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
     }
 
-    // Evaluate a potential move's score
-    private int evaluateMove(char[][] board, int row, int col, char letter) {
-        int score = 0;
-        
-        // Temporary place the letter
-        char original = board[row][col];
-        board[row][col] = letter;
-        
-        // Check all directions for potential SOS
-        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
-        
-        for (int[] dir : directions) {
-            int dr = dir[0];
-            int dc = dir[1];
-            
-            // If this move completes an SOS
-            if (checkSOS(board, row, col, dr, dc)) {
-                score += 100; // High score for completing SOS
+    /**
+     * Start pondering: while the opponent thinks about the given position, search replies to
+     * its likeliest moves in the background, best first, so makeTurnAsync can hand one over
+     * as soon as the real move arrives. Does nothing when pondering is off.
+     */
+    public void ponder(GameMode state, char[][] board, ExecutorService executor) {
+        stopPondering();
+        if (!pondering || state.isGameOver()) {
+            return;
+        }
+
+        // The opponent's likeliest moves are the ones the heuristic rates highest. Moves that
+        // form an SOS are skipped: the opponent moves again after them, so no reply is needed yet.
+        List<Move> candidates = new ArrayList<>();
+        int size = state.getBoardSize();
+        for (int k = 0; k < state.getEmptyCellCount(); k++) {
+            int cell = state.getEmptyCell(k);
+            for (char letter : LETTERS) {
+                if (state.getCompletionCount(cell, letter) == 0) {
+                    candidates.add(new Move(cell / size, cell % size, letter, evaluateMove(state, cell / size, cell % size, letter)));
+                }
             }
-            
-            // If this move sets up a future SOS
-            if (checkPotentialSOS(board, row, col, letter)) {
-                score += 50; // Medium score for setting up SOS
+        }
+        candidates.sort((a, b) -> Integer.compare(b.score, a.score));
+
+        List<PonderLine> lines = new ArrayList<>();
+        for (Move candidate : candidates.subList(0, Math.min(ponderCandidates(), candidates.size()))) {
+            GameMode next = state.copy();
+            next.makeMove(candidate.row, candidate.col, candidate.letter);
+            char[][] nextBoard = copyBoard(board);
+            nextBoard[candidate.row][candidate.col] = candidate.letter;
+            lines.add(new PonderLine(next, nextBoard));
+        }
+        ponderLines = lines;
+
+        CompletableFuture<Void> job = new CompletableFuture<>();
+        ponderJob = job;
+        schedule(executor, job, () -> {
+            try {
+                for (PonderLine line : lines) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    if (!line.reply.isDone()) { // Skip lines cancelled since
+                        line.started = true;
+                        try {
+                            line.reply.complete(ponderTurn(line.state, line.board));
+                        } catch (Throwable t) {
+                            line.reply.completeExceptionally(t);
+                        }
+                    }
+                }
+            } finally {
+                job.complete(null);
             }
-            
-            // If this move blocks opponent's SOS
-            if (checkBlockingMove(board, row, col, letter)) {
-                score += 75; // High score for blocking opponent
+        });
+    }
+
+    // Turn prepared for a pondered position
+    protected List<Move> ponderTurn(GameMode state, char[][] board) {
+        return makeTurn(state, board);
+    }
+
+    // Opponent moves a reply is prepared for, best guess first
+    protected int ponderCandidates() {
+        return PONDER_CANDIDATES;
+    }
+
+    // Drop every pondered line and interrupt the search running for them
+    public void stopPondering() {
+        for (PonderLine line : ponderLines) {
+            line.reply.cancel(false);
+        }
+        ponderLines = List.of();
+        ponderJob.cancel(true);
+    }
+
+    /**
+     * Run a job on the executor once the previous job on this player has returned. Cancelling
+     * the handle before the job starts skips it; cancelling it while the job runs interrupts it,
+     * and the next job starts when the interrupted one has returned.
+     */
+    private void schedule(ExecutorService executor, CompletableFuture<?> handle, Runnable job) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        lastJob.whenComplete((ignored, previousError) -> {
+            AtomicBoolean claimed = new AtomicBoolean(); // Set by whichever of the job and a cancel comes first
+            if (handle.isDone()) {
+                done.complete(null); // Cancelled before it started
+                return;
             }
+            Future<?> task = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    job.run();
+                } finally {
+                    done.complete(null);
+                }
+            });
+            handle.whenComplete((result, error) -> {
+                if (handle.isCancelled()) {
+                    task.cancel(true);
+                    if (claimed.compareAndSet(false, true)) {
+                        done.complete(null); // The job will not run
+                    }
+                }
+            });
+        });
+        lastJob = done;
+    }
+
+    // Position after one likely opponent move, with the reply being searched for it
+    private static final class PonderLine {
+        final long hash;
+        final GameMode state;
+        final char[][] board;
+        final CompletableFuture<List<Move>> reply = new CompletableFuture<>();
+        volatile boolean started; // The reply is being searched right now
+
+        PonderLine(GameMode state, char[][] board) {
+            this.hash = state.getHash();
+            this.state = state;
+            this.board = board;
         }
-        
-        // Restore the board
-        board[row][col] = original;
-        
-        return score;
     }
 
-    // Check if there's a complete SOS
-    private boolean checkSOS(char[][] board, int row, int col, int dr, int dc) {
-        char current = board[row][col];
-        int n = board.length;
+    // Make a move for the given game state; board holds the same cells as a char grid
+    public Move makeMove(GameMode state, char[][] board) {
+        Move perfect = perfectPlayMove(state);
+        if (perfect != null) {
+            return perfect;
+        }
+        return heuristicMove(state, board);
+    }
+
+    // Best move by the evaluation heuristic alone, for a position perfect play has no move for
+    protected Move heuristicMove(GameMode state, char[][] board) {
+        int emptyCount = state.getEmptyCellCount();
+        if (parallelEvaluation && emptyCount > PARALLEL_CELLS_PER_TASK) {
+            return makeMoveInParallel(state, board);
+        }
+        List<Move> possibleMoves = new ArrayList<>(emptyCount * 2);
         
-        // Check if current position is 'S' and part of SOS
-        if (current == 'S') {
-            // Check forward
-            if (isValidPos(row + dr, col + dc, n) && 
-                isValidPos(row + 2 * dr, col + 2 * dc, n)) {
-                if (board[row + dr][col + dc] == 'O' && 
-                    board[row + 2 * dr][col + 2 * dc] == 'S') {
-                    return true;
-                }
-            }
+        // Check all possible moves, taken from the game's empty-cell index
+        for (int k = 0; k < emptyCount; k++) {
+            int cell = state.getEmptyCell(k);
+            int i = cell / board.length;
+            int j = cell % board.length;
+
+            // Try 'S'
+            int sScore = evaluateMove(state, i, j, 'S');
+            possibleMoves.add(new Move(i, j, 'S', sScore));
             
-            // Check backward
-            if (isValidPos(row - dr, col - dc, n) && 
-                isValidPos(row - 2 * dr, col - 2 * dc, n)) {
-                if (board[row - dr][col - dc] == 'O' && 
-                    board[row - 2 * dr][col - 2 * dc] == 'S') {
-                    return true;
+            // Try 'O'
+            int oScore = evaluateMove(state, i, j, 'O');
+            possibleMoves.add(new Move(i, j, 'O', oScore));
+        }
+
+        // Choose the best move
+        return getBestMove(possibleMoves);
+    }
+
+    /**
+     * Parallel version of makeMove: the empty cells are split across the common fork/join pool,
+     * each leaf task evaluates its share with read-only threat map lookups, and the results are
+     * reduced in candidate order. Ties go to the earlier candidate, so the result is the same
+     * as the sequential scan's.
+     */
+    private Move makeMoveInParallel(GameMode state, char[][] board) {
+        int emptyCount = state.getEmptyCellCount();
+        Move best = ForkJoinPool.commonPool().invoke(new EvaluationTask(state, board, 0, emptyCount));
+
+        // If no good moves found (all scores 0), make a random move
+        if (best.score == 0) {
+            int candidate = random.nextInt(emptyCount * 2);
+            int cell = state.getEmptyCell(candidate / 2);
+            return new Move(cell / board.length, cell % board.length, candidate % 2 == 0 ? 'S' : 'O', 0);
+        }
+        return best;
+    }
+
+    // Evaluates the candidates for empty cells [from, to) and returns the best one. Never serialized.
+    @SuppressWarnings("serial")
+    private class EvaluationTask extends RecursiveTask<Move> {
+        private final GameMode state;
+        private final char[][] board;
+        private final int from;
+        private final int to;
+
+        EvaluationTask(GameMode state, char[][] board, int from, int to) {
+            this.state = state;
+            this.board = board;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Move compute() {
+            if (to - from > PARALLEL_CELLS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                EvaluationTask left = new EvaluationTask(state, board, from, middle);
+                left.fork();
+                Move right = new EvaluationTask(state, board, middle, to).compute();
+                Move best = left.join();
+                return right.score > best.score ? right : best;
+            }
+
+            Move best = null;
+            for (int k = from; k < to; k++) {
+                int cell = state.getEmptyCell(k);
+                int i = cell / board.length;
+                int j = cell % board.length;
+                for (char letter : LETTERS) {
+                    int score = evaluateMove(state, i, j, letter);
+                    if (best == null || score > best.score) {
+                        best = new Move(i, j, letter, score);
+                    }
                 }
             }
+            return best;
         }
-        
-        // Check if current position is 'O' and part of SOS
-        if (current == 'O') {
-            if (isValidPos(row - dr, col - dc, n) && 
-                isValidPos(row + dr, col + dc, n)) {
-                if (board[row - dr][col - dc] == 'S' && 
-                    board[row + dr][col + dc] == 'S') {
-                    return true;
-                }
+    }
+
+    // Provably optimal move where one is cheap to get, null otherwise. Simple mode on 3x3 is a
+    // table lookup; General mode is solved outright up to 4x4 when exact play is on, looked up
+    // in the solver's stored results up to 5x5, and searched to the end once few cells are left.
+    protected Move perfectPlayMove(GameMode state) {
+        if (isSimpleMode) {
+            return SimpleModeTable.shared().bestMove(state);
+        }
+        int size = state.getBoardSize();
+        if (exactPlay && size <= FULL_SOLVE_BOARD_SIZE) {
+            return ExactSolver.forBoardSize(size).bestMove(state);
+        }
+        if (size <= ExactSolver.MAX_BOARD_SIZE) {
+            Move stored = ExactSolver.forBoardSize(size).lookupMove(state);
+            if (stored != null) {
+                return stored;
             }
         }
-        
-        return false;
+        return endgameMove(state);
     }
 
-    // Check if this move creates potential for future SOS
-    private boolean checkPotentialSOS(char[][] board, int row, int col, char letter) {
-        int n = board.length;
-        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
-        
-        for (int[] dir : directions) {
-            int dr = dir[0];
-            int dc = dir[1];
-            
+    /**
+     * Endgame mode: with few empty cells left, search the rest of the game exactly with the
+     * alpha-beta engine (move ordering and the shared transposition table) under a time cap.
+     * Returns null if the position is not an endgame yet or the search could not finish in time.
+     */
+    private Move endgameMove(GameMode state) {
+        int empty = state.getEmptyCellCount();
+        if (empty == 0 || empty > endgameThreshold || state.isGameOver()) {
+            return null;
+        }
+        if (endgameSearch == null) {
+            endgameSearch = new AlphaBetaComputerPlayer(playerSymbol, gameMode, false, endgameTimeCapMillis);
+        }
+        Move move = endgameSearch.makeMove(state, null);
+        return endgameSearch.getCompletedDepth() >= empty ? move : null;
+    }
+
+    // Evaluate a potential move's score; subclasses may plug in a heavier evaluation.
+    // Scores as the original board scan did: 100 per direction in which the move completes an
+    // SOS, and 50 (setup) plus 75 (block) for each of the four directions once the move lines up
+    // an SOS for later. Completions come from the game's threat map, the rest from a few cell reads.
+    protected int evaluateMove(GameMode state, int row, int col, char letter) {
+        int score = COMPLETE_SCORE * state.getCompletionCount(row * state.getBoardSize() + col, letter);
+        if (hasPotentialSOS(state, row, col, letter)) {
+            score += GameModeBase.LINE_DIRECTIONS.length * (SETUP_SCORE + BLOCK_SCORE);
+        }
+        return score;
+    }
+
+    // Whether the letter starts an S_S pattern or puts an 'O' after an 'S' with the next cell empty
+    private static boolean hasPotentialSOS(GameMode state, int row, int col, char letter) {
+        int n = state.getBoardSize();
+        for (int d = 0; d < GameModeBase.LINE_DIRECTIONS.length; d++) {
+            int dr = GameModeBase.DIR_ROW[d];
+            int dc = GameModeBase.DIR_COL[d];
             if (letter == 'S') {
-                // Check if we can create S_S pattern
-                if (isValidPos(row + 2 * dr, col + 2 * dc, n) &&
-                    board[row + 2 * dr][col + 2 * dc] == 'S' &&
-                    board[row + dr][col + dc] == ' ') {
-                    return true;
-                }
-            } else if (letter == 'O') {
-                // Check if we can complete S_S pattern
-                if (isValidPos(row - dr, col - dc, n) &&
-                    isValidPos(row + dr, col + dc, n) &&
-                    board[row - dr][col - dc] == 'S' &&
-                    board[row + dr][col + dc] == ' ') {
+                if (isValidPos(row + 2 * dr, col + 2 * dc, n)
+                        && state.getCell(row + 2 * dr, col + 2 * dc) == 'S'
+                        && state.getCell(row + dr, col + dc) == ' ') {
                     return true;
                 }
+            } else if (isValidPos(row - dr, col - dc, n) && isValidPos(row + dr, col + dc, n)
+                    && state.getCell(row - dr, col - dc) == 'S'
+                    && state.getCell(row + dr, col + dc) == ' ') {
+                return true;
             }
         }
         return false;
     }
 
-    // Check if this move blocks opponent's potential SOS
-    private boolean checkBlockingMove(char[][] board, int row, int col, char letter) {
-        // Similar to checkPotentialSOS but checks opponent's possibilities
-        return checkPotentialSOS(board, row, col, letter);
-    }
-
     // check if position is valid
-    private boolean isValidPos(int row, int col, int n) {
+    private static boolean isValidPos(int row, int col, int n) {
         return row >= 0 && row < n && col >= 0 && col < n;
     }
 
@@ -200,4 +501,37 @@ public class ComputerPlayer {
     public char getPlayerSymbol() {
 		return playerSymbol;
 	}
+
+    // Solve General-mode boards up to 4x4 exactly on every move
+    public void setExactPlay(boolean exactPlay) {
+        this.exactPlay = exactPlay;
+    }
+
+    // Search General-mode positions with at most this many empty cells to the end; 0 turns endgame mode off
+    public void setEndgameThreshold(int emptyCells) {
+        this.endgameThreshold = emptyCells;
+    }
+
+    // Time allowed for one endgame search before falling back to the heuristic
+    public void setEndgameTimeCap(long millis) {
+        this.endgameTimeCapMillis = millis;
+        this.endgameSearch = null;
+    }
+
+    public boolean isPondering() {
+        return pondering;
+    }
+
+    // Turn searching on the opponent's time on or off
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) {
+            stopPondering();
+        }
+    }
+
+    // Turn the fork/join evaluation of candidate moves on or off
+    public void setParallelEvaluation(boolean parallelEvaluation) {
+        this.parallelEvaluation = parallelEvaluation;
+    }
 }
\ No newline at end of file
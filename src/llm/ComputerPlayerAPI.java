@@ -1,15 +1,77 @@
 package llm;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.json.JSONObject;
 
 public class ComputerPlayerAPI extends ComputerPlayer {
-    private final HttpClient client;
+    private final ApiClient client; // Shared by all API players
     private final String apiKey;
-    private static final String API_URL = "https://api.anthropic.com/v1/messages";
+    private String apiUrl = DEFAULT_API_URL;
+    private final MoveCache cache; // Answers already given, by canonical position
+    private final ComputerPlayer engine; // Local engine that works out a fallback during each request
+    private final ReentrantLock engineLock = new ReentrantLock(); // One engine search at a time; waits can be interrupted
+    private long latencyBudgetMillis = DEFAULT_LATENCY_BUDGET_MILLIS;
+    private boolean hedging = DEFAULT_HEDGING;
+    private boolean streaming = DEFAULT_STREAMING;
+    private boolean batching = DEFAULT_BATCHING;
+    private boolean compactPrompts = DEFAULT_COMPACT_PROMPTS;
+    private final long[] latencies = new long[LATENCY_SAMPLES]; // Recent answer times, as a ring
+    private int latencyCount;
+    private final AtomicInteger requests = new AtomicInteger(); // Positions sent to the API
+    private final AtomicInteger fallbacks = new AtomicInteger(); // Of those, answered by the local engine
+    private final AtomicInteger skipped = new AtomicInteger(); // Positions played locally, as not worth a request
+    private final AtomicLong inputTokens = new AtomicLong();
+    private final AtomicLong outputTokens = new AtomicLong();
+
+    // Time allowed per request and whether slow requests are hedged with a second one,
+    // read from the sos.api.budget.ms and sos.api.hedge system properties
+    public static final long DEFAULT_LATENCY_BUDGET_MILLIS = Long.getLong("sos.api.budget.ms", 10_000);
+    public static final boolean DEFAULT_HEDGING = Boolean.parseBoolean(System.getProperty("sos.api.hedge", "true"));
+    // Whether replies are streamed and read only up to the first legal move (sos.api.stream)
+    public static final boolean DEFAULT_STREAMING = Boolean.parseBoolean(System.getProperty("sos.api.stream", "true"));
+    // Whether requests from players running at the same time are batched (sos.api.batch)
+    public static final boolean DEFAULT_BATCHING = Boolean.getBoolean("sos.api.batch");
+    // Whether positions are sent in the compact encoding and answered with the move alone (sos.api.compact)
+    public static final boolean DEFAULT_COMPACT_PROMPTS = Boolean.getBoolean("sos.api.compact");
+    // Whether replies to the opponent's likeliest moves are requested during the opponent's turn
+    // (sos.api.ponder). Those requests take the usual path, budget and rate limit included, and
+    // their answers go to the move cache, so the real turn often needs no request at all.
+    public static final boolean DEFAULT_API_PONDERING = Boolean.parseBoolean(System.getProperty("sos.api.ponder", "true"));
+    private static final int API_PONDER_CANDIDATES = 2;
+    private static final int MAX_TOKENS = 1000; // Per position; room for the reasoning tags
+    private static final int COMPACT_MAX_TOKENS = 40; // Per position; a turn of several moves at most
+    private static final int MAX_BATCH_TOKENS = 8000;
+    private static final int MAX_HINTS = 8; // Moves listed per hint line of a compact message
+    private static final int CHARS_PER_TOKEN = 4; // For replies cut off before their usage is reported
+    private static final Map<String, MoveBatcher> batchers = new HashMap<>(); // Shared by players with the same key
+    private static final int LATENCY_SAMPLES = 64;
+    private static final int MIN_HEDGE_SAMPLES = 8;       // Below this, hedge after half the budget
+    private static final long MIN_HEDGE_DELAY_MILLIS = 250;
+    // Messages endpoint, read from the sos.api.url system property; point it at StubApiServer to work offline
+    public static final String DEFAULT_API_URL = System.getProperty("sos.api.url", "https://api.anthropic.com/v1/messages");
     private static final String SYSTEM_PROMPT = """
         You are playing an SOS game. Make a move by analyzing the board.
 	    Rules:
@@ -22,53 +84,399 @@ public class ComputerPlayerAPI extends ComputerPlayer {
 	    Example: 2,1,S
     """;
 
+    private static final String COMPACT_SYSTEM_PROMPT = """
+        You play SOS: place S or O on an empty cell; forming S-O-S in a row, column or diagonal
+        scores. Reply with the move only, as row,column,letter (0-based), e.g. 2,1,S.
+        """;
+
+    // Added to the board message when a whole turn is asked for
+    private static final String TURN_INSTRUCTIONS = """
+
+        Forming an SOS gives you another move. If your move forms one, plan the whole turn:
+        list every move in order on one line, separated by ';', ending with the move that
+        forms no SOS. Example: 2,1,S;2,2,O;0,3,S
+        """;
+    private static final String COMPACT_TURN_INSTRUCTIONS =
+        "Scoring moves again: reply with the whole turn, moves separated by ';'.\n";
+    private static final String MOVE_PATTERN = "\\d+,\\d+,[SO]";
+    private static final String TURN_PATTERN = "\\d+,\\d+,[SO](;\\d+,\\d+,[SO])*";
+
     public ComputerPlayerAPI(char playerSymbol, GameMode gameMode, boolean isSimpleMode, String apiKey) {
-        super(playerSymbol, gameMode, isSimpleMode);
-        this.client = HttpClient.newHttpClient();
+        super(playerSymbol, gameMode, isSimpleMode, DEFAULT_API_PONDERING);
+        this.client = ApiClient.shared();
         this.apiKey = apiKey;
+        this.cache = MoveCache.shared();
+        this.engine = new ComputerPlayer(playerSymbol, gameMode, isSimpleMode);
     }
 
     @Override
-    public Move makeMove(char[][] board) {
+    public Move makeMove(GameMode state, char[][] board) {
+        Move perfect = perfectPlayMove(state);
+        if (perfect != null) {
+            return perfect; // No need to ask the API about a solved position
+        }
+        Move cached = cache.get(board, isSimpleMode, playerSymbol);
+        if (cached != null && isValidMove(cached.row, cached.col, cached.letter, board)) {
+            return cached;
+        }
+        if (!shouldConsult(state, board)) {
+            skipped.incrementAndGet();
+            return heuristicMove(state, board);
+        }
+        // The local engine works out a fallback while the request is in flight
+        FutureTask<Move> fallback = withEngine(() -> engine.makeMove(state, board));
         try {
-            String boardState = createBoardStateMessage(board);
-            
-            // Create request body
-            JSONObject requestBody = new JSONObject()
-                .put("model", "claude-3-sonnet-20240229")
-                .put("max_tokens", 1000) // Increased to accommodate detailed reasoning
-                .put("system", SYSTEM_PROMPT)
-                .put("messages", new JSONObject[]{ 
-                    new JSONObject()
-                        .put("role", "user")
-                        .put("content", boardState)
-                });
-
-            // Create HTTP request
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(API_URL))
-                .header("Content-Type", "application/json")
-                .header("x-api-key", apiKey)
-                .header("anthropic-version", "2023-06-01")
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
-                .build();
-
-            // Send request and get response
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                JSONObject jsonResponse = new JSONObject(response.body());
-                String content = jsonResponse.getJSONArray("content").getJSONObject(0).getString("text");
-                return validateMoveResponse(content, board);
+            String message = compactPrompts ? createCompactMessage(state, board) : createBoardStateMessage(board);
+            String content = requestReply(message, line -> isMoveLine(line, board));
+            Move move = content != null ? validateMoveResponse(content, board) : null;
+            if (move != null) {
+                return move;
+            }
+            fallbacks.incrementAndGet();
+            return fallback.get();
+        } catch (InterruptedException e) {
+            // The move was cancelled, e.g. by New Game; nobody is waiting for it any more
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Local engine failed", e.getCause());
+        } finally {
+            fallback.cancel(true); // Answered by the API, or nobody is waiting
+        }
+    }
+
+    // Ask for the whole turn in one request instead of one request per move of a scoring chain
+    @Override
+    public List<Move> makeTurn(GameMode state, char[][] board) {
+        if (isSimpleMode) {
+            return super.makeTurn(state, board); // A single move: the first SOS ends the game
+        }
+
+        // Solved positions, moves already answered for these positions, and positions not worth
+        // a request are played without one. Each position is solved at most once.
+        GameMode next = state.copy();
+        char[][] nextBoard = copyBoard(board);
+        List<Move> turn = new ArrayList<>();
+        boolean again = true;
+        while (again) {
+            Move move = perfectPlayMove(next);
+            if (move == null) {
+                move = cache.get(nextBoard, isSimpleMode, playerSymbol);
+            }
+            if (move == null || !isValidMove(move, nextBoard)) {
+                if (shouldConsult(next, nextBoard)) {
+                    break;
+                }
+                skipped.incrementAndGet();
+                move = heuristicMove(next, nextBoard);
+                if (move == null) {
+                    return turn;
+                }
+            }
+            turn.add(move);
+            again = playWithinTurn(next, nextBoard, move);
+        }
+        if (!again) {
+            return turn;
+        }
+
+        FutureTask<List<Move>> fallback = withEngine(() -> engine.makeTurn(next, nextBoard));
+        try {
+            String message = compactPrompts
+                ? createCompactMessage(next, nextBoard) + COMPACT_TURN_INSTRUCTIONS
+                : createBoardStateMessage(nextBoard) + TURN_INSTRUCTIONS;
+            String content = requestReply(message, line -> isTurnLine(line, nextBoard));
+            List<Move> planned = content != null ? validateTurnResponse(content, next, nextBoard) : null;
+            if (planned == null) {
+                fallbacks.incrementAndGet();
+                planned = fallback.get();
+            }
+            turn.addAll(planned);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Local engine failed", e.getCause());
+        } finally {
+            fallback.cancel(true);
+        }
+        return turn;
+    }
+
+    /**
+     * Start a local engine search on its own virtual thread. Cancelling the task interrupts it:
+     * a task still waiting for the engine gives up, and a running search stops at its next
+     * time check (the endgame search) or soon returns (the heuristic).
+     */
+    private <T> FutureTask<T> withEngine(Callable<T> search) {
+        FutureTask<T> task = new FutureTask<>(() -> {
+            engineLock.lockInterruptibly();
+            try {
+                return search.call();
+            } finally {
+                engineLock.unlock();
+            }
+        });
+        Thread.startVirtualThread(task);
+        return task;
+    }
+
+    // Only the best guesses are asked about; each costs a request
+    @Override
+    protected int ponderCandidates() {
+        return API_PONDER_CANDIDATES;
+    }
+
+    // Whether a position is worth a request; this player always asks
+    protected boolean shouldConsult(GameMode state, char[][] board) {
+        return true;
+    }
+
+    /**
+     * Send one message to the API within the latency budget. Returns the reply text, or null
+     * after an error response or once the budget has run out. If no answer has come after the
+     * hedge delay (the 95th percentile of recent answer times), an identical second request is
+     * sent and the first usable answer wins; the reply is null only once every request sent
+     * has failed. Requests still open at the end are cancelled.
+     *
+     * When streaming, the reply is read as it is generated and cut off at the first line
+     * that accepts takes, so the time to a move is the time to that line. When batching, the
+     * message joins the next batch instead and is neither hedged nor streamed.
+     */
+    private String requestReply(String boardState, Predicate<String> accepts) throws InterruptedException {
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<String> answer = new CompletableFuture<>();
+        AtomicInteger open = new AtomicInteger(); // Requests sent that have not failed yet
+        List<CompletableFuture<?>> calls = new ArrayList<>();
+        try {
+            if (batching) {
+                CompletableFuture<String> reply = batcher().submit(boardState, accepts, latencyBudgetMillis, this::recordUsage);
+                calls.add(reply);
+                return reply.get(latencyBudgetMillis, TimeUnit.MILLISECONDS);
+            }
+            HttpRequest request = buildRequest(apiUrl, apiKey, compactPrompts, boardState, maxTokens(compactPrompts, 1),
+                streaming, latencyBudgetMillis);
+            calls.add(send(request, answer, open, accepts));
+            long hedgeDelay = hedgeDelayMillis();
+            if (hedging && hedgeDelay < latencyBudgetMillis) {
+                try {
+                    return answer.get(hedgeDelay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    calls.add(send(request, answer, open, accepts)); // Hedge against a slow first request
+                }
+            }
+            long remaining = latencyBudgetMillis - (System.nanoTime() - start) / 1_000_000;
+            return answer.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            System.err.println("Claude API: no answer within " + latencyBudgetMillis + " ms, using the local engine");
+            return null;
+        } catch (ExecutionException e) {
+            return null; // Not reached: the answer is always completed normally
+        } finally {
+            answer.complete(null); // Closes replies still streaming
+            for (CompletableFuture<?> call : calls) {
+                call.cancel(true);
+            }
+        }
+    }
+
+    // HTTP request for one message; depends on the settings passed in only, so shared batchers can use it
+    private static HttpRequest buildRequest(String apiUrl, String apiKey, boolean compactPrompts, String message,
+            int maxTokens, boolean stream, long timeoutMillis) {
+        // Create request body
+        JSONObject requestBody = new JSONObject()
+            .put("model", "claude-3-sonnet-20240229")
+            .put("max_tokens", maxTokens)
+            .put("system", compactPrompts ? COMPACT_SYSTEM_PROMPT : SYSTEM_PROMPT)
+            .put("stream", stream)
+            .put("messages", new JSONObject[]{ 
+                new JSONObject()
+                    .put("role", "user")
+                    .put("content", message)
+            });
+
+        // Create HTTP request
+        return HttpRequest.newBuilder()
+            .uri(URI.create(apiUrl))
+            .timeout(Duration.ofMillis(timeoutMillis))
+            .header("Content-Type", "application/json")
+            .header("x-api-key", apiKey)
+            .header("anthropic-version", "2023-06-01")
+            .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
+            .build();
+    }
+
+    // Batcher shared with the other players using this endpoint, key and encoding. It keeps
+    // only those settings; time limits and token counts come with each position.
+    private MoveBatcher batcher() {
+        String url = apiUrl;
+        String key = apiKey;
+        boolean compact = compactPrompts;
+        ApiClient shared = client;
+        synchronized (batchers) {
+            return batchers.computeIfAbsent(url + " " + key + (compact ? " compact" : ""), k -> new MoveBatcher(shared,
+                (message, positions, timeoutMillis) ->
+                    buildRequest(url, key, compact, message, maxTokens(compact, positions), false, timeoutMillis),
+                MoveBatcher.DEFAULT_WINDOW_MILLIS, MoveBatcher.DEFAULT_MAX_BATCH));
+        }
+    }
+
+    // Answer length allowed for a request about this many positions
+    private static int maxTokens(boolean compactPrompts, int positions) {
+        return Math.min(MAX_BATCH_TOKENS, (compactPrompts ? COMPACT_MAX_TOKENS : MAX_TOKENS) * positions);
+    }
+
+    // Add a reply's reported token usage to the totals
+    private void recordUsage(JSONObject usage) {
+        if (usage != null) {
+            inputTokens.addAndGet(usage.optLong("input_tokens"));
+            outputTokens.addAndGet(usage.optLong("output_tokens"));
+        }
+    }
+
+    // Send one request. A reply with a line that accepts takes completes the shared answer; a
+    // failure completes it with null only if it was the last open request.
+    private CompletableFuture<?> send(HttpRequest request, CompletableFuture<String> answer, AtomicInteger open,
+            Predicate<String> accepts) {
+        long start = System.nanoTime();
+        open.incrementAndGet();
+        if (streaming) {
+            CompletableFuture<HttpResponse<Stream<String>>> call = client.sendAsync(request, HttpResponse.BodyHandlers.ofLines());
+            call.whenComplete((response, error) -> {
+                if (error != null) {
+                    failed(error, answer, open);
+                } else if (response.statusCode() == 200) {
+                    // Reading blocks until the reply is done, so keep it off the client's threads
+                    Thread.startVirtualThread(() -> readStream(response.body(), answer, open, accepts, start));
+                } else {
+                    try (Stream<String> lines = response.body()) {
+                        System.err.println("API Error: " + response.statusCode() + " - " + lines.collect(Collectors.joining("\n")));
+                    }
+                    failed(answer, open);
+                }
+            });
+            return call;
+        }
+
+        CompletableFuture<HttpResponse<String>> call = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        call.whenComplete((response, error) -> {
+            if (error != null) {
+                failed(error, answer, open);
+            } else if (response.statusCode() == 200) {
+                try {
+                    JSONObject jsonResponse = new JSONObject(response.body());
+                    recordUsage(jsonResponse.optJSONObject("usage"));
+                    String text = jsonResponse.getJSONArray("content").getJSONObject(0).getString("text");
+                    if (text.lines().anyMatch(accepts)) {
+                        recordLatency((System.nanoTime() - start) / 1_000_000);
+                        answer.complete(text);
+                    } else {
+                        System.err.println("Error parsing Claude response: No valid move found in response");
+                        failed(answer, open);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Claude API error: " + e.getMessage());
+                    failed(answer, open);
+                }
             } else {
                 System.err.println("API Error: " + response.statusCode() + " - " + response.body());
-                return super.makeMove(board);
+                failed(answer, open);
             }
-            
-        } catch (Exception e) {
-            System.err.println("Claude API error: " + e.getMessage());
-            return super.makeMove(board);
+        });
+        return call;
+    }
+
+    private static void failed(Throwable error, CompletableFuture<String> answer, AtomicInteger open) {
+        if (!(error instanceof CancellationException) && !answer.isDone()) {
+            System.err.println("Claude API error: " + error.getMessage());
         }
+        failed(answer, open);
+    }
+
+    // One request failed; the answer is null once none is left that could still bring a move
+    private static void failed(CompletableFuture<String> answer, AtomicInteger open) {
+        if (open.decrementAndGet() == 0) {
+            answer.complete(null);
+        }
+    }
+
+    /**
+     * Read a streamed reply (server-sent events) as it arrives, collecting the text deltas.
+     * The answer is the text up to the first finished line that accepts takes, and the stream
+     * is closed right there; a reply without such a line counts as a failed request.
+     */
+    private void readStream(Stream<String> events, CompletableFuture<String> answer, AtomicInteger open,
+            Predicate<String> accepts, long start) {
+        answer.whenComplete((text, error) -> events.close()); // Stop reading once any answer is in
+        StringBuilder text = new StringBuilder();
+        int lineStart = 0;
+        boolean usageReported = false;
+        try (events) {
+            Iterator<String> lines = events.iterator();
+            while (!answer.isDone() && lines.hasNext()) {
+                String event = lines.next();
+                if (!event.startsWith("data:")) {
+                    continue; // Event names and blank separators
+                }
+                JSONObject data = new JSONObject(event.substring(5).trim());
+                String type = data.optString("type");
+                if (type.equals("content_block_delta")) {
+                    text.append(data.getJSONObject("delta").optString("text"));
+                } else if (type.equals("message_start")) {
+                    JSONObject usage = data.getJSONObject("message").optJSONObject("usage");
+                    inputTokens.addAndGet(usage == null ? 0 : usage.optLong("input_tokens"));
+                } else if (type.equals("message_delta")) {
+                    JSONObject usage = data.optJSONObject("usage"); // Output tokens of the whole reply
+                    outputTokens.addAndGet(usage == null ? 0 : usage.optLong("output_tokens"));
+                    usageReported = usage != null;
+                } else if (type.equals("message_stop")) {
+                    text.append('\n'); // The last line is finished too
+                } else if (type.equals("error")) {
+                    System.err.println("API Error: " + data.optJSONObject("error"));
+                    failed(answer, open);
+                    return;
+                }
+
+                int newline;
+                while ((newline = text.indexOf("\n", lineStart)) >= 0) {
+                    String line = text.substring(lineStart, newline);
+                    lineStart = newline + 1;
+                    if (accepts.test(line)) {
+                        recordLatency((System.nanoTime() - start) / 1_000_000);
+                        if (!usageReported) {
+                            outputTokens.addAndGet(text.length() / CHARS_PER_TOKEN); // Cut off before the usage came
+                        }
+                        answer.complete(text.substring(0, newline));
+                        return;
+                    }
+                }
+            }
+            if (!answer.isDone()) {
+                System.err.println("Error parsing Claude response: No valid move found in response");
+            }
+            failed(answer, open);
+        } catch (RuntimeException e) {
+            if (!answer.isDone()) {
+                System.err.println("Claude API error: " + e.getMessage());
+            }
+            failed(answer, open);
+        }
+    }
+
+    private synchronized void recordLatency(long millis) {
+        latencies[latencyCount++ % LATENCY_SAMPLES] = millis;
+    }
+
+    // 95th percentile of recent answer times; half the budget until enough answers are known
+    private synchronized long hedgeDelayMillis() {
+        int count = Math.min(latencyCount, LATENCY_SAMPLES);
+        if (count < MIN_HEDGE_SAMPLES) {
+            return latencyBudgetMillis / 2;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, sorted[(int) Math.ceil(count * 0.95) - 1]);
     }
 
     private String createBoardStateMessage(char[][] board) {
@@ -97,29 +505,133 @@ public class ComputerPlayerAPI extends ComputerPlayer {
         return dataBuilder.toString();
     }
 
+    /**
+     * Compact message: the rows as plain lines, and hints naming the moves that score now and
+     * the moves that leave a line one letter short of SOS for the opponent. The board's
+     * characters are about a token each, so this is several times shorter than the drawn board.
+     */
+    private String createCompactMessage(GameMode state, char[][] board) {
+        StringBuilder message = new StringBuilder();
+        message.append(isSimpleMode ? "Simple" : "General").append(' ').append(board.length).append('x').append(board.length)
+            .append(", you are ").append(playerSymbol == 'B' ? "Blue" : "Red").append(". Rows from 0, . is empty:\n");
+        for (char[] row : board) {
+            message.append(new String(row).replace(' ', '.')).append('\n');
+        }
+        appendHints(message, "Scores", state, (cell, letter) -> state.getCompletionCount(cell, letter) > 0);
+        appendHints(message, "Leaves an SOS open", state,
+            (cell, letter) -> state.getCompletionCount(cell, letter) == 0 && state.getSetupCount(cell, letter) > 0);
+        return message.toString();
+    }
+
+    // Hint line listing up to MAX_HINTS moves that match; nothing if none do
+    private static void appendHints(StringBuilder message, String label, GameMode state, BiPredicate<Integer, Character> matches) {
+        int size = state.getBoardSize();
+        int listed = 0;
+        for (int k = 0; k < state.getEmptyCellCount() && listed < MAX_HINTS; k++) {
+            int cell = state.getEmptyCell(k);
+            for (char letter : new char[]{'S', 'O'}) {
+                if (listed < MAX_HINTS && matches.test(cell, letter)) {
+                    message.append(listed == 0 ? label + ":" : "").append(' ')
+                        .append(cell / size).append(',').append(cell % size).append(',').append(letter);
+                    listed++;
+                }
+            }
+        }
+        if (listed > 0) {
+            message.append('\n');
+        }
+    }
+
+    // The move in a reply, if it is valid on the board; null otherwise
     private Move validateMoveResponse(String response, char[][] board) {
-        try {
-            // Extract just the final move coordinates
-            String[] parts = response.lines()
-                .filter(line -> line.matches("\\d+,\\d+,[SO]"))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("No valid move found in response"))
-                .split(",");
+        String line = response.lines()
+            .filter(candidate -> isMoveLine(candidate, board))
+            .findFirst()
+            .orElse(null);
+        if (line == null) {
+            System.err.println("Error parsing Claude response: No valid move found in response");
+            return null;
+        }
+
+        // Log the AI's reasoning for debugging/analysis
+        System.out.println("AI Reasoning:\n" + response);
+        Move move = parseMove(line.trim());
+        cache.put(board, isSimpleMode, playerSymbol, move);
+        return move;
+    }
 
-            int row = Integer.parseInt(parts[0].trim());
-            int col = Integer.parseInt(parts[1].trim());
-            char letter = parts[2].trim().charAt(0);
+    // Play the moves of a turn reply on a copy of the game. The turn stops at the first invalid
+    // move or the first move that passes the turn; if the reply stops while the turn goes on,
+    // the built-in heuristic plays the rest. Null if the reply has no valid first move.
+    private List<Move> validateTurnResponse(String response, GameMode state, char[][] board) {
+        GameMode next = state.copy();
+        char[][] nextBoard = copyBoard(board);
+        List<Move> turn = new ArrayList<>();
+        boolean again = true;
 
-            if (isValidMove(row, col, letter, board)) {
-                // Log the AI's reasoning for debugging/analysis
-                System.out.println("AI Reasoning:\n" + response);
-                return new Move(row, col, letter, 100);
+        String line = response.lines()
+            .filter(candidate -> isTurnLine(candidate, board))
+            .findFirst()
+            .orElse(null);
+        if (line != null) {
+            System.out.println("AI Reasoning:\n" + response);
+            for (String part : line.trim().split(";")) {
+                Move move = parseMove(part);
+                if (!isValidMove(move.row, move.col, move.letter, nextBoard)) {
+                    break;
+                }
+                cache.put(nextBoard, isSimpleMode, playerSymbol, move);
+                turn.add(move);
+                again = playWithinTurn(next, nextBoard, move);
+                if (!again) {
+                    break;
+                }
             }
-        } catch (Exception e) {
-            System.err.println("Error parsing Claude response: " + e.getMessage());
         }
-        
-        return super.makeMove(board);
+        if (turn.isEmpty()) {
+            System.err.println("Error parsing Claude response: No valid move found in response");
+            return null;
+        }
+
+        while (again) {
+            Move move = super.makeMove(next, nextBoard);
+            if (move == null) {
+                break;
+            }
+            turn.add(move);
+            again = playWithinTurn(next, nextBoard, move);
+        }
+        return turn;
+    }
+
+    // Whether a reply line is a single move that is legal on the board
+    private boolean isMoveLine(String line, char[][] board) {
+        String move = line.trim();
+        return move.matches(MOVE_PATTERN) && isValidMove(parseMove(move), board);
+    }
+
+    // Whether a reply line is a turn whose first move is legal on the board
+    private boolean isTurnLine(String line, char[][] board) {
+        String turn = line.trim();
+        return turn.matches(TURN_PATTERN) && isValidMove(parseMove(turn.split(";")[0]), board);
+    }
+
+    // Move from "row,column,letter"; rows and columns too long to be numbers come out as -1
+    private static Move parseMove(String text) {
+        String[] fields = text.split(",");
+        return new Move(parseIndex(fields[0]), parseIndex(fields[1]), fields[2].charAt(0), 100);
+    }
+
+    private static int parseIndex(String digits) {
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean isValidMove(Move move, char[][] board) {
+        return isValidMove(move.row, move.col, move.letter, board);
     }
 
     private boolean isValidMove(int row, int col, char letter, char[][] board) {
@@ -129,7 +641,59 @@ public class ComputerPlayerAPI extends ComputerPlayer {
                (letter == 'S' || letter == 'O');
     }
 
+    // Time allowed per request before the local engine's move is played
+    public void setLatencyBudget(long millis) {
+        this.latencyBudgetMillis = millis;
+    }
+
+    // Turn hedged second requests on or off
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    // Stream replies and stop reading at the first legal move, or wait for whole replies
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    // Join the batches shared with other players running at the same time, or ask alone
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
+    public void setApiUrl(String apiUrl) {
+        this.apiUrl = apiUrl;
+    }
+
+    // Positions sent to the API so far, and how many of them the local engine had to answer
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    // Positions played without a request because shouldConsult turned them down
+    public int getSkippedCount() {
+        return skipped.get();
+    }
+
+    // Send positions in the compact encoding and ask for the move alone, or the full prompt
+    public void setCompactPrompts(boolean compactPrompts) {
+        this.compactPrompts = compactPrompts;
+    }
+
+    // Tokens sent and received so far, as reported by the API
+    public long getInputTokens() {
+        return inputTokens.get();
+    }
+
+    public long getOutputTokens() {
+        return outputTokens.get();
+    }
+
     public void cleanup() {
-        
+        cache.save(); // Keep the answers for the next session
     }
 }
\ No newline at end of file
@@ -0,0 +1,571 @@
+package llm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Exact solver for General mode on boards up to 5x5. It computes the final score margin under
+ * optimal play: the points the side to move still gains over its opponent from a position.
+ *
+ * The search is alpha-beta on a compact position of two bit masks (one for 'S', one for 'O').
+ * Results are memoized by canonical key: the smallest of the position's 8 rotations and
+ * reflections, which the position keeps up to date move by move. The memo is a lock-free
+ * open-addressing table shared by all threads. The top plies are split across the common
+ * fork/join pool: the first move of a node is searched alone, the rest in parallel with the
+ * bound it produced.
+ *
+ * 4x4 solves from the empty board in seconds; 5x5 is only practical from later positions.
+ * Exact results can be saved to solver_tables/general<n>x<n>.table (the directory is set by
+ * sos.solver.dir) and are loaded again the next time the solver for that size is created.
+ * The memo table takes no memory until something is loaded or searched: a loaded table is
+ * sized to its entries, and it grows to full size before the first search.
+ * File format: entry count, then per entry the canonical key (long) and the margin (byte).
+ */
+public final class ExactSolver {
+    public static final int MAX_BOARD_SIZE = 5;
+    // Directory where solved tables are stored, read from the sos.solver.dir system property
+    public static final String DEFAULT_TABLES_DIR = System.getProperty("sos.solver.dir", "solver_tables");
+    private static final int TABLE_BITS = 22;      // Full size for searching: 4M slots, 32 MB
+    private static final int LOADED_MIN_BITS = 10; // Smallest table made for loaded results
+    private static final int PROBE_LIMIT = 16;     // Slots tried per lookup
+    private static final int SPLIT_DEPTH = 3;      // Plies from the root that are split across threads
+    private static final int SPLIT_MIN_EMPTY = 8;  // Smaller positions are searched on one thread
+    private static final int INFINITE = 1000;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Bound types, as in TranspositionTable
+    private static final int EXACT = 1;
+    private static final int LOWER = 2;
+    private static final int UPPER = 3;
+
+    private static final ExactSolver[] shared = new ExactSolver[MAX_BOARD_SIZE + 1];
+
+    private final int boardSize;
+    private final int cells;
+    private final int fullMask;
+    private final int[][] symmetries; // Symmetry s moves cell i to symmetries[s][i]
+    // Neighbour bits per cell and direction, 0 when off the board
+    private final int[][] back1;
+    private final int[][] back2;
+    private final int[][] forward1;
+    private final int[][] forward2;
+    // Memo slots: (key + 1) << 10 | bound << 8 | margin & 0xFF, 0 for an empty slot.
+    // Null until the first result is loaded or searched; replaced whole when it grows.
+    private volatile long[] slots;
+    // Move and gain buffers per ply for the single-threaded search, one set per thread
+    private final ThreadLocal<int[][][]> buffers;
+
+    private ExactSolver(int boardSize) {
+        this.boardSize = boardSize;
+        this.cells = boardSize * boardSize;
+        this.fullMask = (1 << cells) - 1;
+        this.symmetries = new int[8][cells];
+        int directions = GameModeBase.LINE_DIRECTIONS.length;
+        this.back1 = new int[cells][directions];
+        this.back2 = new int[cells][directions];
+        this.forward1 = new int[cells][directions];
+        this.forward2 = new int[cells][directions];
+        this.buffers = ThreadLocal.withInitial(() -> new int[][][]{new int[cells + 1][2 * cells], new int[cells + 1][2 * cells]});
+
+        int m = boardSize - 1;
+        for (int cell = 0; cell < cells; cell++) {
+            int r = cell / boardSize;
+            int c = cell % boardSize;
+            int[][] images = {
+                {r, c}, {c, m - r}, {m - r, m - c}, {m - c, r}, // Rotations
+                {r, m - c}, {m - r, c}, {c, r}, {m - c, m - r}  // Reflections
+            };
+            for (int s = 0; s < 8; s++) {
+                symmetries[s][cell] = images[s][0] * boardSize + images[s][1];
+            }
+            for (int d = 0; d < directions; d++) {
+                back1[cell][d] = bit(r - GameModeBase.DIR_ROW[d], c - GameModeBase.DIR_COL[d]);
+                back2[cell][d] = bit(r - 2 * GameModeBase.DIR_ROW[d], c - 2 * GameModeBase.DIR_COL[d]);
+                forward1[cell][d] = bit(r + GameModeBase.DIR_ROW[d], c + GameModeBase.DIR_COL[d]);
+                forward2[cell][d] = bit(r + 2 * GameModeBase.DIR_ROW[d], c + 2 * GameModeBase.DIR_COL[d]);
+            }
+        }
+    }
+
+    private int bit(int row, int col) {
+        return row >= 0 && row < boardSize && col >= 0 && col < boardSize ? 1 << (row * boardSize + col) : 0;
+    }
+
+    // Process-wide solver for a board size, with its saved table loaded on first use
+    public static synchronized ExactSolver forBoardSize(int boardSize) {
+        if (boardSize < 3 || boardSize > MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("Exact solving supports boards up to " + MAX_BOARD_SIZE + "x"
+                + MAX_BOARD_SIZE + ": " + boardSize);
+        }
+        if (shared[boardSize] == null) {
+            ExactSolver solver = new ExactSolver(boardSize);
+            solver.load();
+            shared[boardSize] = solver;
+        }
+        return shared[boardSize];
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    // Margin the side to move gains over its opponent from here on, with optimal play by both
+    public int solve(GameMode state) {
+        ensureCapacity(TABLE_BITS);
+        return ForkJoinPool.commonPool().invoke(new SolveTask(new Searcher(state), -INFINITE, INFINITE, 0));
+    }
+
+    // Optimal move for the side to move; its score is the resulting margin. Null if the game is over.
+    public ComputerPlayer.Move bestMove(GameMode state) {
+        Searcher root = new Searcher(state);
+        int[] moves = new int[2 * cells];
+        int count = root.generateMoves(moves, new int[2 * cells]);
+        if (count == 0) {
+            return null;
+        }
+        ensureCapacity(TABLE_BITS);
+        int best = moves[0];
+        int bestScore = ForkJoinPool.commonPool().invoke(new MoveTask(root, best, -INFINITE, INFINITE, 0));
+        if (count > 1) {
+            MoveTask[] rest = new MoveTask[count - 1];
+            for (int i = 1; i < count; i++) {
+                rest[i - 1] = new MoveTask(root, moves[i], bestScore, INFINITE, 0);
+            }
+            ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    invokeAll(rest);
+                    return null;
+                }
+            });
+            for (MoveTask task : rest) {
+                // A score above the first move's is exact, since beta was unbounded
+                if (task.getRawResult() > bestScore) {
+                    bestScore = task.getRawResult();
+                    best = task.move;
+                }
+            }
+        }
+        return toMove(best, bestScore);
+    }
+
+    /**
+     * Optimal move using stored results only, without searching. Null unless the exact
+     * margin of every move from this position is already in the table.
+     */
+    public ComputerPlayer.Move lookupMove(GameMode state) {
+        if (slots == null) {
+            return null; // Nothing stored
+        }
+        Searcher root = new Searcher(state);
+        int[] moves = new int[2 * cells];
+        int count = root.generateMoves(moves, new int[2 * cells]);
+        int best = -1;
+        int bestScore = -INFINITE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int gain = root.make(move);
+            int score;
+            if ((root.s | root.o) == fullMask) {
+                score = gain;
+            } else {
+                long slot = probe(root.canonicalKey());
+                if (slot == 0 || slotBound(slot) != EXACT) {
+                    root.undo(move);
+                    return null;
+                }
+                score = gain > 0 ? gain + slotMargin(slot) : -slotMargin(slot);
+            }
+            root.undo(move);
+            if (score > bestScore) {
+                bestScore = score;
+                best = move;
+            }
+        }
+        return best == -1 ? null : toMove(best, bestScore);
+    }
+
+    private ComputerPlayer.Move toMove(int move, int score) {
+        int cell = ComputerPlayer.Move.cellOf(move);
+        return new ComputerPlayer.Move(cell / boardSize, cell % boardSize, ComputerPlayer.Move.letterOf(move), score);
+    }
+
+    // Split a node's moves across the pool, or search it on this thread when it is small or deep.
+    // The fork/join tasks are never serialized.
+    @SuppressWarnings("serial")
+    private final class SolveTask extends RecursiveTask<Integer> {
+        private final Searcher position;
+        private final int alpha;
+        private final int beta;
+        private final int depth;
+
+        SolveTask(Searcher position, int alpha, int beta, int depth) {
+            this.position = position;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            int empty = Integer.bitCount(fullMask & ~(position.s | position.o));
+            if (depth >= SPLIT_DEPTH || empty < SPLIT_MIN_EMPTY) {
+                return position.search(alpha, beta);
+            }
+            long key = position.canonicalKey();
+            long slot = probe(key);
+            if (slot != 0 && settles(slot, alpha, beta)) {
+                return slotMargin(slot);
+            }
+
+            int[] moves = new int[2 * cells]; // Kept while the moves run, so not a per-thread buffer
+            int count = position.generateMoves(moves, new int[2 * cells]);
+            int best = new MoveTask(position, moves[0], alpha, beta, depth).compute();
+            int bestAlpha = Math.max(alpha, best);
+            if (bestAlpha < beta && count > 1) {
+                MoveTask[] rest = new MoveTask[count - 1];
+                for (int i = 1; i < count; i++) {
+                    rest[i - 1] = new MoveTask(position, moves[i], bestAlpha, beta, depth);
+                }
+                invokeAll(rest);
+                for (MoveTask task : rest) {
+                    best = Math.max(best, task.getRawResult());
+                }
+            }
+            store(key, best, alpha, beta);
+            return best;
+        }
+    }
+
+    // Play one move on a copy of the position and solve the rest; the score is from the mover's side
+    @SuppressWarnings("serial")
+    private final class MoveTask extends RecursiveTask<Integer> {
+        private final Searcher parent;
+        private final int move;
+        private final int alpha;
+        private final int beta;
+        private final int depth;
+
+        MoveTask(Searcher parent, int move, int alpha, int beta, int depth) {
+            this.parent = parent;
+            this.move = move;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            Searcher child = new Searcher(parent);
+            int gain = child.make(move);
+            if (gain > 0) {
+                // The mover goes again, so the child is scored from the same side
+                return gain + new SolveTask(child, alpha - gain, beta - gain, depth + 1).compute();
+            }
+            return -new SolveTask(child, -beta, -alpha, depth + 1).compute();
+        }
+    }
+
+    // Search state: the position and its 8 symmetric images. Copies are cheap, since the move
+    // buffers of the single-threaded search belong to the thread, not the position.
+    private final class Searcher {
+        int s;
+        int o;
+        final int[] symS = new int[8];
+        final int[] symO = new int[8];
+
+        Searcher(GameMode state) {
+            for (int cell = 0; cell < cells; cell++) {
+                char letter = state.getCell(cell / boardSize, cell % boardSize);
+                if (letter == 'S' || letter == 'O') {
+                    place(cell, letter == 'O');
+                }
+            }
+        }
+
+        Searcher(Searcher other) {
+            this.s = other.s;
+            this.o = other.o;
+            System.arraycopy(other.symS, 0, symS, 0, 8);
+            System.arraycopy(other.symO, 0, symO, 0, 8);
+        }
+
+        private void place(int cell, boolean isO) {
+            if (isO) {
+                o ^= 1 << cell;
+                for (int k = 0; k < 8; k++) {
+                    symO[k] ^= 1 << symmetries[k][cell];
+                }
+            } else {
+                s ^= 1 << cell;
+                for (int k = 0; k < 8; k++) {
+                    symS[k] ^= 1 << symmetries[k][cell];
+                }
+            }
+        }
+
+        // Play a move code; returns the SOS it forms
+        int make(int move) {
+            int cell = ComputerPlayer.Move.cellOf(move);
+            boolean isO = (move & 1) != 0;
+            int gain = gain(cell, isO);
+            place(cell, isO);
+            return gain;
+        }
+
+        void undo(int move) {
+            place(ComputerPlayer.Move.cellOf(move), (move & 1) != 0); // Placing toggles the bit back
+        }
+
+        // SOS a letter on an empty cell would form, at most one per direction as in makeMove
+        int gain(int cell, boolean isO) {
+            int gain = 0;
+            for (int d = 0; d < back1[cell].length; d++) {
+                if (isO) {
+                    if ((s & back1[cell][d]) != 0 && (s & forward1[cell][d]) != 0) {
+                        gain++;
+                    }
+                } else if (((o & back1[cell][d]) != 0 && (s & back2[cell][d]) != 0)
+                        || ((o & forward1[cell][d]) != 0 && (s & forward2[cell][d]) != 0)) {
+                    gain++;
+                }
+            }
+            return gain;
+        }
+
+        long canonicalKey() {
+            long key = Long.MAX_VALUE;
+            for (int k = 0; k < 8; k++) {
+                key = Math.min(key, (long) symO[k] << cells | symS[k]);
+            }
+            return key;
+        }
+
+        // Fill the buffer with every move, scoring moves first by gain; returns the count.
+        // Scores is scratch space of the same length.
+        int generateMoves(int[] buffer, int[] scores) {
+            int count = 0;
+            for (int empty = fullMask & ~(s | o); empty != 0; empty &= empty - 1) {
+                int cell = Integer.numberOfTrailingZeros(empty);
+                buffer[count] = ComputerPlayer.Move.encode(cell, 'S');
+                scores[count++] = gain(cell, false);
+                buffer[count] = ComputerPlayer.Move.encode(cell, 'O');
+                scores[count++] = gain(cell, true);
+            }
+            // Stable insertion sort by descending gain
+            for (int i = 1; i < count; i++) {
+                int move = buffer[i];
+                int score = scores[i];
+                int j = i - 1;
+                while (j >= 0 && scores[j] < score) {
+                    buffer[j + 1] = buffer[j];
+                    scores[j + 1] = scores[j];
+                    j--;
+                }
+                buffer[j + 1] = move;
+                scores[j + 1] = score;
+            }
+            return count;
+        }
+
+        int search(int alpha, int beta) {
+            int[][][] scratch = buffers.get();
+            return search(alpha, beta, scratch[0], scratch[1]);
+        }
+
+        // The search never forks, so the thread's buffers are not in use by anything else meanwhile
+        private int search(int alpha, int beta, int[][] moves, int[][] gains) {
+            int filled = Integer.bitCount(s | o);
+            if (filled == cells) {
+                return 0;
+            }
+            long key = canonicalKey();
+            long slot = probe(key);
+            if (slot != 0 && settles(slot, alpha, beta)) {
+                return slotMargin(slot);
+            }
+
+            int[] buffer = moves[filled];
+            int count = generateMoves(buffer, gains[filled]);
+            int best = -INFINITE;
+            int a = alpha;
+            for (int i = 0; i < count && a < beta; i++) {
+                int move = buffer[i];
+                int gain = make(move);
+                int score = gain > 0 ? gain + search(a - gain, beta - gain, moves, gains) : -search(-beta, -a, moves, gains);
+                undo(move);
+                if (score > best) {
+                    best = score;
+                    a = Math.max(a, score);
+                }
+            }
+            store(key, best, alpha, beta);
+            return best;
+        }
+    }
+
+    private static boolean settles(long slot, int alpha, int beta) {
+        int margin = slotMargin(slot);
+        int bound = slotBound(slot);
+        return bound == EXACT || (bound == LOWER && margin >= beta) || (bound == UPPER && margin <= alpha);
+    }
+
+    private static int slotMargin(long slot) {
+        return (byte) slot;
+    }
+
+    private static int slotBound(long slot) {
+        return (int) (slot >>> 8 & 3);
+    }
+
+    private static long slotKey(long slot) {
+        return (slot >>> 10) - 1;
+    }
+
+    private static int index(long[] table, long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(table.length)));
+    }
+
+    // Make the table hold at least 2^bits slots, keeping what is stored. Results stored by a search
+    // running on the old table meanwhile are lost, which only costs time.
+    private synchronized void ensureCapacity(int bits) {
+        long[] old = slots;
+        if (old != null && old.length >= 1 << bits) {
+            return;
+        }
+        long[] grown = new long[1 << bits];
+        if (old != null) {
+            for (long slot : old) {
+                if (slot != 0) {
+                    put(grown, slotKey(slot), slot);
+                }
+            }
+        }
+        slots = grown;
+    }
+
+    private long probe(long key) {
+        long[] table = slots;
+        if (table == null) {
+            return 0;
+        }
+        int mask = table.length - 1;
+        for (int i = 0, index = index(table, key); i < PROBE_LIMIT; i++, index = (index + 1) & mask) {
+            long slot = (long) SLOTS.getOpaque(table, index);
+            if (slot == 0) {
+                return 0;
+            }
+            if (slotKey(slot) == key) {
+                return slot;
+            }
+        }
+        return 0;
+    }
+
+    // Store a search result from window (alpha, beta); an exact result is never replaced by a bound
+    private void store(long key, int margin, int alpha, int beta) {
+        int bound = margin <= alpha ? UPPER : margin >= beta ? LOWER : EXACT;
+        put(slots, key, (key + 1) << 10 | (long) bound << 8 | (margin & 0xFF));
+    }
+
+    private static void put(long[] table, long key, long slot) {
+        int mask = table.length - 1;
+        for (int i = 0, index = index(table, key); i < PROBE_LIMIT; i++, index = (index + 1) & mask) {
+            long old = (long) SLOTS.getOpaque(table, index);
+            if (old == 0) {
+                if (SLOTS.compareAndSet(table, index, 0L, slot)) {
+                    return;
+                }
+                old = (long) SLOTS.getOpaque(table, index);
+            }
+            if (slotKey(old) == key) {
+                if (slotBound(slot) == EXACT || slotBound(old) != EXACT) {
+                    SLOTS.setOpaque(table, index, slot);
+                }
+                return;
+            }
+        }
+        // Probe run full: the result is simply not memoized
+    }
+
+    private Path tablePath() {
+        return Paths.get(DEFAULT_TABLES_DIR, "general" + boardSize + "x" + boardSize + ".table");
+    }
+
+    private void load() {
+        Path path = tablePath();
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int count = in.readInt();
+            if (count > 0) {
+                // Room for twice the entries, so probe runs stay short
+                ensureCapacity(Math.min(TABLE_BITS, Math.max(LOADED_MIN_BITS, 33 - Integer.numberOfLeadingZeros(count))));
+            }
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                store(key, in.readByte(), -INFINITE, INFINITE);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + path + ": " + e.getMessage());
+        }
+    }
+
+    // Write every exact result to the table file for this board size
+    public void save() throws IOException {
+        long[] slots = this.slots;
+        if (slots == null) {
+            return; // Nothing loaded or solved, so nothing to add to the file
+        }
+        Path path = tablePath();
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        int count = 0;
+        for (long slot : slots) {
+            count += slot != 0 && slotBound(slot) == EXACT ? 1 : 0;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(count);
+            for (long slot : slots) {
+                if (slot != 0 && slotBound(slot) == EXACT) {
+                    out.writeLong(slotKey(slot));
+                    out.writeByte(slotMargin(slot));
+                }
+            }
+        }
+    }
+
+    // Save the tables of every solver created in this process; failures are reported and skipped
+    public static synchronized void saveAll() {
+        for (ExactSolver solver : shared) {
+            if (solver != null) {
+                try {
+                    solver.save();
+                } catch (IOException e) {
+                    System.err.println("Could not save " + solver.tablePath() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Solve the empty board of a size and save the table: java llm.ExactSolver 4
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        ExactSolver solver = forBoardSize(size);
+        long start = System.nanoTime();
+        int margin = solver.solve(new GeneralGameMode(size));
+        System.out.println(size + "x" + size + " margin for the first player: " + margin
+            + " (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        solver.save();
+    }
+}
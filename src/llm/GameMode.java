@@ -4,12 +4,29 @@ import java.util.List;
 
 public interface GameMode {
     boolean makeMove(int row, int col, char letter); // Make a move on the board
+    void undoMove(); // Take back the last move, restoring board, turn, scores and sequences
+    int getMoveCount(); // Number of moves currently on the move stack
+    int getMoveCell(int ply); // Cell of the move at a stack position, as row * boardSize + col
+    char getCell(int row, int col); // Letter at a cell, ' ' if empty or out of bounds
     char getCurrentPlayer(); // Get the current player, 'B' or 'R'
     int getBlueScore(); // Get the current score of the blue player
     int getRedScore(); // Get the current score of the red player
     boolean isGameOver(); // Check if the game is over
+    int getBoardSize(); // Get the number of rows (and columns) of the board
+    int getEmptyCellCount(); // Number of empty cells left
+    int getEmptyCell(int index); // Empty cell at index 0..count-1, as row * boardSize + col, in no fixed order
+
+    // Threat map lookups for an empty cell (row * boardSize + col); 0 for occupied cells
+    int getCompletionCount(int cell, char letter); // SOS sequences the letter would form there right now
+    int getSetupCount(int cell, char letter); // Lines (S_S, SO_, _OS) the letter would leave one letter short of SOS
     void switchPlayer(); // Switch to the next player
+    long getHash(); // Zobrist key of the letters on the board and the side to move
+    GameMode copy(); // Independent deep copy, including the move stack
     
-    // Get the SOS sequences formed in the last move
+    // Get the SOS sequences formed in the last move, as packed codes (see SOSSequence.pack)
+    int getLastMoveSequenceCount();
+    int getLastMoveSequenceCode(int index);
+
+    // Get the SOS sequences formed in the last move; builds new objects on every call
     List<GameModeBase.SOSSequence> getLastMoveSequences();
 }
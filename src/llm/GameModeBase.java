@@ -4,33 +4,120 @@ import java.util.ArrayList;
 import java.util.List;
 
 public abstract class GameModeBase implements GameMode {
+    // Directions checked for SOS; the index is also the direction in a packed sequence code
+    static final int[] DIR_ROW = {0, 1, 1, 1};
+    static final int[] DIR_COL = {1, 0, 1, -1};
+    static final GameButton.Direction[] LINE_DIRECTIONS = {
+        GameButton.Direction.HORIZONTAL,
+        GameButton.Direction.VERTICAL,
+        GameButton.Direction.DIAGONAL_RIGHT,
+        GameButton.Direction.DIAGONAL_LEFT
+    };
+
     protected char[][] grid;   // The game board grid
     protected int boardSize;   // Size of the board
     protected char currentPlayer; // 'B' for Blue, 'R' for Red
-    protected List<SOSSequence> lastMoveSequences; // SOS sequences formed in the last move
+    protected long hash;       // Zobrist key, updated incrementally by makeMove and switchPlayer
+
+    // Move stack used by undoMove(), one entry per move played
+    protected int[] moveStack;    // Cell of each move, row * boardSize + col
+    protected char[] moverStack;  // Player who made each move
+    protected int[] sequenceCodes;   // Packed SOS sequences, four slots per move (one per direction)
+    protected byte[] sequenceCounts; // Number of sequences formed by each move
+    protected int moveCount;      // Number of moves on the stack
+
+    // Live index of empty cells: a dense array with swap-remove, plus each cell's slot in it
+    protected int[] emptyCells;
+    protected int[] emptySlot;
+    protected int emptyCount;
+
+    // Threat map: for each empty cell, what an 'S' or an 'O' placed there would do right now.
+    // Bits 0-7: SOS an 'S' completes, 8-15: SOS an 'O' completes,
+    // bits 16-23 and 24-31: setups an 'S' or an 'O' creates.
+    protected int[] threats;
 
     public GameModeBase(int boardSize) {
+        if (boardSize < 1 || boardSize > Zobrist.MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("Board size must be between 1 and " + Zobrist.MAX_BOARD_SIZE + ": " + boardSize);
+        }
         this.boardSize = boardSize;
         this.grid = new char[boardSize][boardSize];
         this.currentPlayer = 'B'; // Blue starts
+        this.moveStack = new int[boardSize * boardSize];
+        this.moverStack = new char[boardSize * boardSize];
+        this.sequenceCodes = new int[boardSize * boardSize * LINE_DIRECTIONS.length];
+        this.sequenceCounts = new byte[boardSize * boardSize];
+        this.emptyCells = new int[boardSize * boardSize];
+        this.emptySlot = new int[boardSize * boardSize];
+        this.threats = new int[boardSize * boardSize];
         initBoard();
     }
 
+    // Copy constructor used by the subclasses' copy()
+    protected GameModeBase(GameModeBase other) {
+        this.boardSize = other.boardSize;
+        this.grid = new char[boardSize][];
+        for (int i = 0; i < boardSize; i++) {
+            this.grid[i] = other.grid[i].clone();
+        }
+        this.currentPlayer = other.currentPlayer;
+        this.hash = other.hash;
+        this.moveStack = other.moveStack.clone();
+        this.moverStack = other.moverStack.clone();
+        this.sequenceCodes = other.sequenceCodes.clone();
+        this.sequenceCounts = other.sequenceCounts.clone();
+        this.moveCount = other.moveCount;
+        this.emptyCells = other.emptyCells.clone();
+        this.emptySlot = other.emptySlot.clone();
+        this.emptyCount = other.emptyCount;
+        this.threats = other.threats.clone();
+    }
+
     // Initialize the board with empty cells
     protected void initBoard() {
         for (int i = 0; i < boardSize; i++) {
             for (int j = 0; j < boardSize; j++) {
                 grid[i][j] = ' '; // Empty cell
+                int cell = i * boardSize + j;
+                emptyCells[cell] = cell;
+                emptySlot[cell] = cell;
             }
         }
+        emptyCount = boardSize * boardSize;
+    }
+
+    // Remove a cell from the empty index by moving the last entry into its slot.
+    // The removed cell keeps its old slot number so restoreEmptyCell() can put it back.
+    private void removeEmptyCell(int cell) {
+        int slot = emptySlot[cell];
+        int last = emptyCells[--emptyCount];
+        emptyCells[slot] = last;
+        emptySlot[last] = slot;
+    }
+
+    // Reverse removeEmptyCell(); only valid in LIFO order, as used by undoMove()
+    private void restoreEmptyCell(int cell) {
+        int slot = emptySlot[cell];
+        int moved = emptyCells[slot];
+        emptyCells[emptyCount] = moved;
+        emptySlot[moved] = emptyCount++;
+        emptyCells[slot] = cell;
     }
 
     @Override
     public boolean makeMove(int row, int col, char letter) {
         if (isValidMove(row, col)) {
             grid[row][col] = letter;
-            lastMoveSequences = new ArrayList<>();
-            boolean sosFormed = checkForSOS(row, col);
+            removeEmptyCell(row * boardSize + col);
+            hash ^= Zobrist.cellKey(row * boardSize + col, letter);
+            updateThreats(row, col);
+
+            // Push the move before scoring so undoMove() can reverse it exactly
+            moveStack[moveCount] = row * boardSize + col;
+            moverStack[moveCount] = currentPlayer;
+            sequenceCounts[moveCount] = (byte) checkForSOS(row, col, moveCount * LINE_DIRECTIONS.length);
+            moveCount++;
+            boolean sosFormed = sequenceCounts[moveCount - 1] > 0;
             if (sosFormed) {
                 handleSOSFound(); // Abstract method to be implemented by subclasses
             } else {
@@ -41,6 +128,89 @@ public abstract class GameModeBase implements GameMode {
         return false; // Invalid move
     }
 
+    @Override
+    public void undoMove() {
+        if (moveCount == 0) {
+            throw new IllegalStateException("No move to undo");
+        }
+        int ply = moveCount - 1;
+        int cell = moveStack[ply];
+        hash ^= Zobrist.cellKey(cell, grid[cell / boardSize][cell % boardSize]);
+        grid[cell / boardSize][cell % boardSize] = ' ';
+        restoreEmptyCell(cell);
+        updateThreats(cell / boardSize, cell % boardSize);
+
+        // The mover keeps the turn after an SOS and loses it otherwise; either way it goes back to them
+        if (currentPlayer != moverStack[ply]) {
+            switchPlayer();
+        }
+        if (sequenceCounts[ply] > 0) {
+            undoSOSFound(); // Abstract method to be implemented by subclasses
+        }
+        moveCount = ply;
+    }
+
+    @Override
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    @Override
+    public int getMoveCell(int ply) {
+        return moveStack[ply];
+    }
+
+    // Recompute the threat map around a cell whose letter changed: the cell itself and
+    // every empty cell that shares a three-cell line with it
+    private void updateThreats(int row, int col) {
+        threats[row * boardSize + col] = grid[row][col] == ' ' ? computeThreats(row, col) : 0;
+        for (int d = 0; d < LINE_DIRECTIONS.length; d++) {
+            for (int k = -2; k <= 2; k++) {
+                int r = row + k * DIR_ROW[d];
+                int c = col + k * DIR_COL[d];
+                if (k != 0 && r >= 0 && r < boardSize && c >= 0 && c < boardSize && grid[r][c] == ' ') {
+                    threats[r * boardSize + c] = computeThreats(r, c);
+                }
+            }
+        }
+    }
+
+    // Threat map entry for an empty cell, packed as described for the threats field
+    private int computeThreats(int row, int col) {
+        int completeS = 0, completeO = 0, setupS = 0, setupO = 0;
+        for (int d = 0; d < LINE_DIRECTIONS.length; d++) {
+            int dr = DIR_ROW[d];
+            int dc = DIR_COL[d];
+            char back1 = letterAt(row - dr, col - dc);
+            char back2 = letterAt(row - 2 * dr, col - 2 * dc);
+            char forward1 = letterAt(row + dr, col + dc);
+            char forward2 = letterAt(row + 2 * dr, col + 2 * dc);
+
+            // 'S' as the last or the first letter; makeMove counts at most one SOS per direction
+            if ((back1 == 'O' && back2 == 'S') || (forward1 == 'O' && forward2 == 'S')) {
+                completeS++;
+            }
+            setupS += isSetup(back1, 'O', back2, 'S') + isSetup(forward1, 'O', forward2, 'S');
+
+            // 'O' in the middle
+            if (back1 == 'S' && forward1 == 'S') {
+                completeO++;
+            }
+            setupO += isSetup(back1, 'S', forward1, 'S');
+        }
+        return completeS | completeO << 8 | setupS << 16 | setupO << 24;
+    }
+
+    // 1 if one of the two cells holds its SOS letter and the other one is empty
+    private static int isSetup(char first, char wantFirst, char second, char wantSecond) {
+        return (first == wantFirst && second == ' ') || (first == ' ' && second == wantSecond) ? 1 : 0;
+    }
+
+    // Like getCell, but '#' outside the board so the edge never counts as an empty cell
+    private char letterAt(int row, int col) {
+        return row >= 0 && row < boardSize && col >= 0 && col < boardSize ? grid[row][col] : '#';
+    }
+
     // check if a move is valid
     protected boolean isValidMove(int row, int col) {
         return row >= 0 && row < boardSize
@@ -48,68 +218,54 @@ public abstract class GameModeBase implements GameMode {
                 && grid[row][col] == ' ';
     }
 
-    // Check for SOS sequences formed by the last move
-    protected boolean checkForSOS(int row, int col) {
-        boolean sosFound = false;
-        int[][] directions = {
-            {0, 1},   // Horizontal
-            {1, 0},   // Vertical
-            {1, 1},   // Diagonal Right
-            {1, -1}   // Diagonal Left
-        };
-        
-        // Corresponding line directions for drawing
-        GameButton.Direction[] lineDirections = {
-            GameButton.Direction.HORIZONTAL,
-            GameButton.Direction.VERTICAL,
-            GameButton.Direction.DIAGONAL_RIGHT,
-            GameButton.Direction.DIAGONAL_LEFT
-        };
-
-        // Check each direction
-        for (int i = 0; i < directions.length; i++) {
-            int dr = directions[i][0];
-            int dc = directions[i][1];
-            GameButton.Direction direction = lineDirections[i];
-
-            SOSSequence sequence = checkDirection(row, col, dr, dc, direction);
-            if (sequence != null) {
-                sosFound = true;
-                lastMoveSequences.add(sequence);
+    /**
+     * Check for SOS sequences formed by the last move.
+     * Found sequences are packed into sequenceCodes starting at slot; nothing is allocated.
+     * Returns the number of sequences found.
+     */
+    protected int checkForSOS(int row, int col, int slot) {
+        int found = 0;
+        for (int d = 0; d < LINE_DIRECTIONS.length; d++) {
+            int code = checkDirection(row, col, d);
+            if (code >= 0) {
+                sequenceCodes[slot + found++] = code;
             }
         }
-        return sosFound;
+        return found;
     }
 
-    // Check for SOS in a specific direction
-    protected SOSSequence checkDirection(int row, int col, int dr, int dc, GameButton.Direction direction) {
+    // Check for SOS in a specific direction; returns the packed sequence code, or -1 if none
+    protected int checkDirection(int row, int col, int d) {
+        int dr = DIR_ROW[d];
+        int dc = DIR_COL[d];
         char current = grid[row][col];
 
         // Check backward: current cell is the last 'S' in SOS
         if (current == 'S' 
             && getCell(row - dr, col - dc) == 'O' 
             && getCell(row - 2 * dr, col - 2 * dc) == 'S') {
-            return new SOSSequence(row - 2 * dr, col - 2 * dc, row - dr, col - dc, row, col, direction);
+            return SOSSequence.pack((row - 2 * dr) * boardSize + (col - 2 * dc), d);
         }
 
         // Check middle: current cell is 'O' in SOS
         if (getCell(row - dr, col - dc) == 'S' 
             && current == 'O' 
             && getCell(row + dr, col + dc) == 'S') {
-            return new SOSSequence(row - dr, col - dc, row, col, row + dr, col + dc, direction);
+            return SOSSequence.pack((row - dr) * boardSize + (col - dc), d);
         }
 
         // Check forward: current cell is the first 'S' in SOS
         if (current == 'S' 
             && getCell(row + dr, col + dc) == 'O' 
             && getCell(row + 2 * dr, col + 2 * dc) == 'S') {
-            return new SOSSequence(row, col, row + dr, col + dc, row + 2 * dr, col + 2 * dc, direction);
+            return SOSSequence.pack(row * boardSize + col, d);
         }
-        return null;
+        return -1;
     }
 
     // Helper method to get the cell value, return '' if out of bounds
-    protected char getCell(int row, int col) {
+    @Override
+    public char getCell(int row, int col) {
         if (row >= 0 && row < boardSize 
             && col >= 0 && col < boardSize) {
             return grid[row][col];
@@ -126,11 +282,33 @@ public abstract class GameModeBase implements GameMode {
     @Override
     public void switchPlayer() {
         currentPlayer = (currentPlayer == 'B') ? 'R' : 'B';
+        hash ^= Zobrist.SIDE_KEY;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public int getLastMoveSequenceCount() {
+        return moveCount > 0 ? sequenceCounts[moveCount - 1] : 0;
     }
 
+    @Override
+    public int getLastMoveSequenceCode(int index) {
+        return sequenceCodes[(moveCount - 1) * LINE_DIRECTIONS.length + index];
+    }
+
+    // Builds the sequence objects from the packed codes; only the GUI needs them
     @Override
     public List<SOSSequence> getLastMoveSequences() {
-        return lastMoveSequences;
+        int count = getLastMoveSequenceCount();
+        List<SOSSequence> sequences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sequences.add(SOSSequence.unpack(getLastMoveSequenceCode(i), boardSize));
+        }
+        return sequences;
     }
 
     @Override
@@ -140,21 +318,43 @@ public abstract class GameModeBase implements GameMode {
 
     // Helper method to check if the board is full
     protected boolean isBoardFull() {
-        for (int i = 0; i < boardSize; i++) {
-            for (int j = 0; j < boardSize; j++) {
-                if (grid[i][j] == ' ') {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return emptyCount == 0;
+    }
+
+    @Override
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    @Override
+    public int getEmptyCellCount() {
+        return emptyCount;
+    }
+
+    @Override
+    public int getEmptyCell(int index) {
+        return emptyCells[index];
+    }
+
+    @Override
+    public int getCompletionCount(int cell, char letter) {
+        return threats[cell] >>> (letter == 'S' ? 0 : 8) & 0xFF;
+    }
+
+    @Override
+    public int getSetupCount(int cell, char letter) {
+        return threats[cell] >>> (letter == 'S' ? 16 : 24) & 0xFF;
     }
 
     // Abstract method to handle SOS found; to be implemented by subclasses
     protected abstract void handleSOSFound();
 
-    // Inner class to represent an SOS sequence
-    public class SOSSequence {
+    // Abstract method to reverse handleSOSFound() when a scoring move is undone.
+    // Called with currentPlayer and the last-move sequences set as they were for that move.
+    protected abstract void undoSOSFound();
+
+    // Nested class to represent an SOS sequence
+    public static class SOSSequence {
         public int row1, col1; // First 'S'
         public int row2, col2; // 'O'
         public int row3, col3; // Second 'S'
@@ -170,6 +370,27 @@ public abstract class GameModeBase implements GameMode {
             this.col3 = col3;
             this.direction = direction;
         }
+
+        /**
+         * Packs a sequence into an int: the first 'S' cell (row * boardSize + col) shifted left
+         * by two, with the direction index (0-3, see LINE_DIRECTIONS) in the low bits.
+         * The other two cells follow from the start cell and the direction.
+         */
+        public static int pack(int startCell, int directionIndex) {
+            return startCell << 2 | directionIndex;
+        }
+
+        // Rebuilds a sequence object from a code made by pack()
+        public static SOSSequence unpack(int code, int boardSize) {
+            int d = code & 3;
+            int row = (code >>> 2) / boardSize;
+            int col = (code >>> 2) % boardSize;
+            return new SOSSequence(
+                row, col,
+                row + DIR_ROW[d], col + DIR_COL[d],
+                row + 2 * DIR_ROW[d], col + 2 * DIR_COL[d],
+                LINE_DIRECTIONS[d]);
+        }
     }
 }
 
@@ -0,0 +1,461 @@
+package llm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * One game of SOS without any user interface: the game mode, the board, the players, the
+ * recording and the turn loop. Human moves come in through play(); computer turns are
+ * planned in the background and applied when ready. A user interface, or a batch of games
+ * on a server, follows the game through the Listener events.
+ *
+ * Computer turns are applied, and their events delivered, on the event executor: the
+ * Swing event thread for the GUI, or the computing thread itself by default. Human moves
+ * deliver their events on the caller's thread. Events are delivered in order, after the
+ * session's lock is released. A computer turn that fails is planned again by the local
+ * engine, so a game never waits on a computer that has no move.
+ */
+public class GameSession {
+    // Events of a game; every method does nothing by default
+    public interface Listener {
+        default void gameStarted(GameSession session) {}
+
+        // A letter was placed; sequences are the SOSs it formed, empty if none
+        default void movePlayed(GameSession session, int row, int col, char letter, char player,
+                List<GameModeBase.SOSSequence> sequences) {}
+
+        // The given player is to move; again is true when it keeps the turn after scoring
+        default void turnChanged(GameSession session, char player, boolean again) {}
+
+        // The game is over; winner is 'B', 'R', or ' ' for a draw
+        default void gameOver(GameSession session, char winner) {}
+
+        // The computer's turn failed; the local engine plays it instead
+        default void turnFailed(GameSession session, char player, String reason) {}
+
+        // The game was stopped because no move could be found for a computer player
+        default void gameAborted(GameSession session, String reason) {}
+    }
+
+    // Creates a computer player for a side of a new game
+    public interface PlayerFactory {
+        ComputerPlayer create(char playerSymbol, GameMode gameMode, boolean isSimpleMode);
+    }
+
+    // Which GameMode holds the game: BitboardGameMode when the sos.bitboard system property is set,
+    // otherwise GeneralGameMode or SimpleGameMode
+    public static final boolean DEFAULT_BITBOARD = Boolean.getBoolean("sos.bitboard");
+
+    private final boolean isSimpleMode;
+    private final int boardSize;
+    private final GameMode gameMode;
+    private final char[][] board; // Kept in step with gameMode, so players get it without a copy of the UI
+    private final ComputerPlayer blueComputer; // Null for a human player
+    private final ComputerPlayer redComputer;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService moveExecutor = Executors.newVirtualThreadPerTaskExecutor(); // Computer turns and pondering
+    private final CompletableFuture<Character> result = new CompletableFuture<>();
+    private Executor eventExecutor = Runnable::run;
+    private long computerDelayMillis;
+    private GameRecordService recorder; // Null when not recording
+
+    private boolean gameInProgress;
+    private boolean isReplaying;
+    private GameRecord replayGame;
+    private int replayMoveIndex;
+    private CompletableFuture<List<ComputerPlayer.Move>> pendingTurn; // Computer turn being planned, null if none
+    private boolean applyingTurn; // A planned computer turn is being played out
+    private int moveTicket; // Bumped to drop computer moves scheduled earlier
+    private final ArrayDeque<Runnable> events = new ArrayDeque<>(); // Listener calls waiting for delivery
+    private boolean delivering; // Some thread is delivering events; guarded by events
+
+    // A game on a board of the given size; a null factory makes that side a human player
+    public GameSession(boolean isSimpleMode, int boardSize, PlayerFactory blue, PlayerFactory red) {
+        this(isSimpleMode, boardSize, blue, red, DEFAULT_BITBOARD);
+    }
+
+    // As above, with the game kept in a BitboardGameMode instead of the char-grid modes when bitboard is set
+    public GameSession(boolean isSimpleMode, int boardSize, PlayerFactory blue, PlayerFactory red, boolean bitboard) {
+        this.isSimpleMode = isSimpleMode;
+        this.boardSize = isSimpleMode ? 3 : boardSize;
+        if (bitboard) {
+            this.gameMode = new BitboardGameMode(this.boardSize, isSimpleMode);
+        } else {
+            this.gameMode = isSimpleMode ? new SimpleGameMode() : new GeneralGameMode(this.boardSize);
+        }
+        this.board = new char[this.boardSize][this.boardSize];
+        for (char[] row : board) {
+            Arrays.fill(row, ' ');
+        }
+        this.blueComputer = blue == null ? null : blue.create('B', gameMode, isSimpleMode);
+        this.redComputer = red == null ? null : red.create('R', gameMode, isSimpleMode);
+    }
+
+    // A session that replays a recorded game with replayNext(); nobody plays in it
+    public static GameSession replay(GameRecord record) {
+        GameSession session = new GameSession(record.isSimpleMode(), record.getBoardSize(), null, null);
+        session.isReplaying = true;
+        session.replayGame = record;
+        return session;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // Where computer turns are applied and their events delivered
+    public void setEventExecutor(Executor eventExecutor) {
+        this.eventExecutor = eventExecutor;
+    }
+
+    // Pause before each computer turn is planned, so people can follow the game
+    public void setComputerDelay(long millis) {
+        this.computerDelayMillis = millis;
+    }
+
+    // Record the game with this service; null for no recording
+    public void setRecorder(GameRecordService recorder) {
+        this.recorder = recorder;
+    }
+
+    // Set up the starting position before start(): place a letter for the side to move, with no
+    // events and no recording. False once the game has started or if the cell is taken.
+    public synchronized boolean setUpMove(int row, int col, char letter) {
+        if (gameInProgress || isReplaying || !isEmptyCell(row, col) || (letter != 'S' && letter != 'O')) {
+            return false;
+        }
+        gameMode.makeMove(row, col, letter);
+        board[row][col] = letter;
+        return true;
+    }
+
+    // Start the game: Blue moves first, or the side to move after setUpMove
+    public void start() {
+        synchronized (this) {
+            if (recorder != null && !isReplaying) {
+                recorder.startRecording(isSimpleMode, boardSize, playerType(blueComputer), playerType(redComputer));
+            }
+            gameInProgress = true;
+            announce(listener -> listener.gameStarted(this));
+            if (!isReplaying) {
+                nextTurn();
+            }
+        }
+        deliverEvents();
+    }
+
+    private static String playerType(ComputerPlayer computer) {
+        return computer != null ? "Computer" : "Human";
+    }
+
+    // Play a human move for the side to move; false if it is not a human's turn or the cell is taken
+    public boolean play(int row, int col, char letter) {
+        synchronized (this) {
+            if (!gameInProgress || isReplaying || isComputerTurn() || !isEmptyCell(row, col)
+                    || (letter != 'S' && letter != 'O')) {
+                return false;
+            }
+            applyMove(row, col, letter);
+        }
+        deliverEvents();
+        return true;
+    }
+
+    // Play the next recorded move of a replay; false once the record is done
+    public boolean replayNext() {
+        synchronized (this) {
+            if (!isReplaying || replayMoveIndex >= replayGame.getMoves().size()) {
+                return false;
+            }
+            GameRecord.Move move = replayGame.getMoves().get(replayMoveIndex++);
+            if (gameInProgress && isEmptyCell(move.getRow(), move.getCol())) {
+                applyMove(move.getRow(), move.getCol(), move.getLetter());
+            }
+        }
+        deliverEvents();
+        return true;
+    }
+
+    private boolean isEmptyCell(int row, int col) {
+        return row >= 0 && row < boardSize && col >= 0 && col < boardSize && board[row][col] == ' ';
+    }
+
+    // Place a letter for the side to move, then end the game or hand on the turn
+    private void applyMove(int row, int col, char letter) {
+        char mover = gameMode.getCurrentPlayer();
+        boolean sosFormed = gameMode.makeMove(row, col, letter);
+        board[row][col] = letter;
+        if (recorder != null && !isReplaying) {
+            recorder.recordMove(row, col, letter, playerName(mover));
+        }
+        List<GameModeBase.SOSSequence> sequences = sosFormed ? gameMode.getLastMoveSequences() : List.of();
+        announce(listener -> listener.movePlayed(this, row, col, letter, mover, sequences));
+
+        if (sosFormed && isSimpleMode) {
+            endGame(mover); // The first SOS wins
+        } else if (gameMode.isGameOver()) {
+            int margin = gameMode.getBlueScore() - gameMode.getRedScore();
+            endGame(isSimpleMode || margin == 0 ? ' ' : margin > 0 ? 'B' : 'R');
+        } else {
+            char next = gameMode.getCurrentPlayer();
+            announce(listener -> listener.turnChanged(this, next, sosFormed));
+            if (!isReplaying && !applyingTurn) {
+                nextTurn();
+            }
+        }
+    }
+
+    // Schedule the computer's turn, or let a computer ponder while a human is to move
+    private void nextTurn() {
+        if (isComputerTurn()) {
+            int ticket = ++moveTicket;
+            Executor executor = computerDelayMillis > 0
+                ? CompletableFuture.delayedExecutor(computerDelayMillis, TimeUnit.MILLISECONDS, eventExecutor)
+                : eventExecutor;
+            executor.execute(() -> makeComputerMove(ticket));
+        } else {
+            startPondering();
+        }
+    }
+
+    private synchronized void makeComputerMove(int ticket) {
+        if (ticket != moveTicket || !gameInProgress || !isComputerTurn()) {
+            return; // Cancelled, or the game moved on while the move was scheduled
+        }
+        planTurn(currentComputer(), false);
+    }
+
+    // Plan the whole turn in the background on a copy of the game, then apply it on the event
+    // executor. A fallback plan comes from the local engine after the player failed.
+    private void planTurn(ComputerPlayer player, boolean fallback) {
+        CompletableFuture<List<ComputerPlayer.Move>> request =
+            player.makeTurnAsync(gameMode.copy(), getBoard(), moveExecutor);
+        pendingTurn = request;
+        request.whenComplete((turn, error) ->
+            eventExecutor.execute(() -> applyComputerTurn(request, turn, error, fallback)));
+    }
+
+    // Applies a planned computer turn, unless the game it was planned for is gone. The moves
+    // of a scoring chain are played in one pass.
+    private void applyComputerTurn(CompletableFuture<List<ComputerPlayer.Move>> request,
+            List<ComputerPlayer.Move> turn, Throwable error, boolean fallback) {
+        synchronized (this) {
+            if (request != pendingTurn || request.isCancelled()) {
+                return; // Stale: the game ended or was closed while the turn was planned
+            }
+            pendingTurn = null;
+            if (error != null || turn == null || turn.isEmpty()) {
+                String reason = error != null ? String.valueOf(error.getMessage()) : "no move";
+                if (!fallback) {
+                    // The computer stays on its turn, so someone has to move for it
+                    char mover = gameMode.getCurrentPlayer();
+                    announce(listener -> listener.turnFailed(this, mover, reason));
+                    planTurn(new ComputerPlayer(mover, gameMode, isSimpleMode), true);
+                } else {
+                    abort(reason);
+                }
+            } else {
+                char mover = gameMode.getCurrentPlayer();
+                applyingTurn = true;
+                for (ComputerPlayer.Move move : turn) {
+                    if (!gameInProgress || gameMode.getCurrentPlayer() != mover || !isEmptyCell(move.row, move.col)) {
+                        break;
+                    }
+                    applyMove(move.row, move.col, move.letter);
+                }
+                applyingTurn = false;
+
+                // The plan fell short of the end of the turn, or the other side is to move
+                if (gameInProgress) {
+                    nextTurn();
+                }
+            }
+        }
+        deliverEvents();
+    }
+
+    // While a human is deciding, let a computer opponent search its replies in the background
+    private void startPondering() {
+        ComputerPlayer waiting = gameMode.getCurrentPlayer() == 'B' ? redComputer : blueComputer;
+        if (waiting != null) {
+            waiting.ponder(gameMode.copy(), getBoard(), moveExecutor);
+        }
+    }
+
+    private void endGame(char winner) {
+        if (recorder != null && !isReplaying) {
+            recorder.endRecording(gameMode.getBlueScore(), gameMode.getRedScore());
+        }
+        gameInProgress = false;
+        cancelPendingMove();
+        announce(listener -> listener.gameOver(this, winner));
+        post(() -> result.complete(winner));
+    }
+
+    // Stop a game that cannot go on; a recording is kept as interrupted
+    private void abort(String reason) {
+        interruptRecording();
+        gameInProgress = false;
+        cancelPendingMove();
+        announce(listener -> listener.gameAborted(this, reason));
+        post(() -> result.complete(' '));
+    }
+
+    // Stops a scheduled or running computer move; its result, if any, is dropped
+    private void cancelPendingMove() {
+        moveTicket++;
+        if (pendingTurn != null) {
+            pendingTurn.cancel(true);
+            pendingTurn = null;
+        }
+        if (blueComputer != null) {
+            blueComputer.stopPondering();
+        }
+        if (redComputer != null) {
+            redComputer.stopPondering();
+        }
+    }
+
+    // Save the unfinished game as interrupted
+    public synchronized void interruptRecording() {
+        if (recorder != null && gameInProgress && !isReplaying) {
+            recorder.interruptRecording(gameMode.getBlueScore(), gameMode.getRedScore());
+        }
+    }
+
+    // Stop the game for good and drop computer work. The players are left as they are: saving
+    // the API players' caches (ComputerPlayerAPI.cleanup) is up to whoever made them.
+    public void close() {
+        synchronized (this) {
+            gameInProgress = false;
+            cancelPendingMove();
+            moveExecutor.shutdownNow();
+            post(() -> result.complete(' '));
+        }
+        deliverEvents();
+    }
+
+    // Queue a call to every listener; delivered by deliverEvents once the session lock is released
+    private void announce(Consumer<Listener> call) {
+        post(() -> {
+            for (Listener listener : listeners) {
+                call.accept(listener);
+            }
+        });
+    }
+
+    private void post(Runnable event) {
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    /**
+     * Deliver the queued events in order. Listeners are never called with the session lock
+     * held, so they may call back into the session or block (a modal dialog, say). A thread
+     * that finds another one delivering leaves its events to it; a call made while the lock is
+     * still held (a turn applied inline) leaves them to the caller that holds it.
+     */
+    private void deliverEvents() {
+        if (Thread.holdsLock(this)) {
+            return;
+        }
+        synchronized (events) {
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        boolean drained = false;
+        try {
+            while (true) {
+                Runnable event;
+                synchronized (events) {
+                    event = events.poll();
+                    if (event == null) {
+                        delivering = false;
+                        drained = true;
+                        return;
+                    }
+                }
+                event.run();
+            }
+        } finally {
+            if (!drained) {
+                synchronized (events) {
+                    delivering = false; // A listener threw; the events after it wait for the next delivery
+                }
+            }
+        }
+    }
+
+    private ComputerPlayer currentComputer() {
+        return gameMode.getCurrentPlayer() == 'B' ? blueComputer : redComputer;
+    }
+
+    public synchronized boolean isComputerTurn() {
+        return currentComputer() != null;
+    }
+
+    public static String playerName(char player) {
+        return player == 'B' ? "Blue" : "Red";
+    }
+
+    // Completes with the winner when the game ends: 'B', 'R', or ' ' for a draw or a closed game
+    public CompletableFuture<Character> getResult() {
+        return result;
+    }
+
+    // Copy of the board, ' ' for empty cells
+    public synchronized char[][] getBoard() {
+        return ComputerPlayer.copyBoard(board);
+    }
+
+    public synchronized char getCurrentPlayer() {
+        return gameMode.getCurrentPlayer();
+    }
+
+    public synchronized int getBlueScore() {
+        return gameMode.getBlueScore();
+    }
+
+    public synchronized int getRedScore() {
+        return gameMode.getRedScore();
+    }
+
+    public synchronized boolean isGameInProgress() {
+        return gameInProgress;
+    }
+
+    public boolean isReplaying() {
+        return isReplaying;
+    }
+
+    public boolean isSimpleMode() {
+        return isSimpleMode;
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public ComputerPlayer getBlueComputer() {
+        return blueComputer;
+    }
+
+    public ComputerPlayer getRedComputer() {
+        return redComputer;
+    }
+
+    public GameRecord getReplayGame() {
+        return replayGame;
+    }
+}
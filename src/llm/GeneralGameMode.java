@@ -10,10 +10,21 @@ public class GeneralGameMode extends GameModeBase {
         this.redScore = 0;
     }
 
+    private GeneralGameMode(GeneralGameMode other) {
+        super(other);
+        this.blueScore = other.blueScore;
+        this.redScore = other.redScore;
+    }
+
+    @Override
+    public GeneralGameMode copy() {
+        return new GeneralGameMode(this);
+    }
+
     @Override
     protected void handleSOSFound() {
     	// Update the score for the current player based on the number of sequences formed
-        int sequencesFormed = lastMoveSequences.size();
+        int sequencesFormed = getLastMoveSequenceCount();
         if (currentPlayer == 'B') {
             blueScore += sequencesFormed;  // Add points equal to number of sequences formed
         } else {
@@ -21,6 +32,17 @@ public class GeneralGameMode extends GameModeBase {
         }
     }
 
+    @Override
+    protected void undoSOSFound() {
+    	// Take back the points awarded for the sequences of the undone move
+        int sequencesFormed = getLastMoveSequenceCount();
+        if (currentPlayer == 'B') {
+            blueScore -= sequencesFormed;
+        } else {
+            redScore -= sequencesFormed;
+        }
+    }
+
     @Override
     public int getBlueScore() {
         return blueScore;
@@ -0,0 +1,59 @@
+package llm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Consult-rate check for HybridComputerPlayer against StubApiServer. Plays whole General-mode
+ * games between two hybrid players as headless GameSessions, all at the same time, and
+ * reports the share of positions the API was asked about. The margin comes from the usual
+ * sos.hybrid.margin system property.
+ *
+ * Exits with status 1 when the share is above the given maximum, so a change to the evaluator
+ * or the margin that sends most positions to the API shows up as a failure.
+ *
+ * Usage: java llm.HybridBenchmark [games] [board size] [max percent asked]
+ */
+public final class HybridBenchmark {
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        double maxShare = args.length > 2 ? Double.parseDouble(args[2]) : 25;
+        StubApiServer stub = new StubApiServer(0);
+        stub.setLatency(20, 0.3);
+        stub.start();
+
+        List<HybridComputerPlayer> players = Collections.synchronizedList(new ArrayList<>());
+        GameSession.PlayerFactory hybrid = (symbol, mode, simple) -> {
+            HybridComputerPlayer player = new HybridComputerPlayer(symbol, mode, simple, "stub");
+            player.setApiUrl(stub.getUrl());
+            players.add(player);
+            return player;
+        };
+        // Players are not cleaned up: that would save the stub's answers in the move cache
+        List<CompletableFuture<Character>> results = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            GameSession session = new GameSession(false, size, hybrid, hybrid);
+            session.start();
+            results.add(session.getResult().whenComplete((winner, error) -> session.close()));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+        stub.stop();
+
+        int consulted = 0;
+        int skipped = 0;
+        for (HybridComputerPlayer player : players) {
+            consulted += player.getRequestCount();
+            skipped += player.getSkippedCount();
+        }
+        double share = consulted * 100.0 / Math.max(1, consulted + skipped);
+        boolean ok = consulted + skipped > 0 && share <= maxShare;
+        System.out.printf("%d games on %dx%d, margin %d: asked the API about %d of %d positions (%.1f%%, at most %.1f%%): %s%n",
+            games, size, size, HybridComputerPlayer.DEFAULT_MARGIN, consulted, consulted + skipped, share, maxShare,
+            ok ? "ok" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
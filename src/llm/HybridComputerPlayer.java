@@ -0,0 +1,54 @@
+package llm;
+
+/**
+ * API player that asks the API only about positions where the local evaluator is unsure.
+ * A position is forced, and played by the local engine, when a single cell is left or a move
+ * forms an SOS. Otherwise the API is asked only when the two best evaluated moves score
+ * within the margin of each other; a clear best move is played locally.
+ *
+ * How often the player asked and how often it played locally is in getRequestCount and
+ * getSkippedCount; HybridBenchmark measures the share over whole games.
+ */
+public class HybridComputerPlayer extends ComputerPlayerAPI {
+    // Largest gap between the two best move scores that still counts as unsure, read from the
+    // sos.hybrid.margin system property. Scores come in steps of 100 (see evaluateMove), so by
+    // default only a tie for the best move counts as unsure.
+    public static final int DEFAULT_MARGIN = Integer.getInteger("sos.hybrid.margin", 0);
+
+    private int margin = DEFAULT_MARGIN;
+
+    public HybridComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode, String apiKey) {
+        super(playerSymbol, gameMode, isSimpleMode, apiKey);
+    }
+
+    // Whether the position is open and the best evaluated moves are close
+    @Override
+    protected boolean shouldConsult(GameMode state, char[][] board) {
+        if (state.getEmptyCellCount() <= 1) {
+            return false;
+        }
+        int size = state.getBoardSize();
+        int best = Integer.MIN_VALUE;
+        int second = Integer.MIN_VALUE;
+        for (int k = 0; k < state.getEmptyCellCount(); k++) {
+            int cell = state.getEmptyCell(k);
+            for (char letter : new char[]{'S', 'O'}) {
+                if (state.getCompletionCount(cell, letter) > 0) {
+                    return false; // An SOS to take
+                }
+                int score = evaluateMove(state, cell / size, cell % size, letter);
+                if (score > best) {
+                    second = best;
+                    best = score;
+                } else if (score > second) {
+                    second = score;
+                }
+            }
+        }
+        return best - second <= margin;
+    }
+
+    public void setMargin(int margin) {
+        this.margin = margin;
+    }
+}
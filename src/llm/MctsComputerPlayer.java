@@ -0,0 +1,245 @@
+package llm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Computer player based on Monte Carlo Tree Search with UCT selection and random playouts.
+ *
+ * Playouts run on all cores with tree parallelism: the workers share one tree, and every node
+ * on a worker's path gets its visit counted before the playout result is known. Until the
+ * result is backed up that visit counts as a loss (virtual loss), which steers the other
+ * workers to different lines.
+ *
+ * The tree is kept between turns. On the next call the player walks down it along the moves
+ * actually played since, and keeps the statistics already gathered for that subtree.
+ */
+public class MctsComputerPlayer extends ComputerPlayer {
+    public static final int DEFAULT_PLAYOUTS = 20_000;
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int EXPAND_VISITS = 8; // Visits before a node's children are created
+    private static final int ROLLOUT_SAMPLES = 8; // Random moves tried per playout step
+    private static final char[] LETTERS = {'S', 'O'};
+
+    private final int playoutsPerMove;
+    private final int threads;
+
+    // Tree kept from the previous call, with the position its root stands for
+    private Node root;
+    private long rootHash;
+    private int rootMoveCount;
+
+    public MctsComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode) {
+        this(playerSymbol, gameMode, isSimpleMode, DEFAULT_PLAYOUTS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MctsComputerPlayer(char playerSymbol, GameMode gameMode, boolean isSimpleMode, int playoutsPerMove, int threads) {
+        super(playerSymbol, gameMode, isSimpleMode);
+        this.playoutsPerMove = Math.max(1, playoutsPerMove);
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    public Move makeMove(GameMode state, char[][] board) {
+        if (state.isGameOver()) {
+            return null;
+        }
+        Node searchRoot = reuseSubtree(state);
+        if (searchRoot == null) {
+            searchRoot = new Node(-1, ' ');
+        }
+        final Node treeRoot = searchRoot;
+
+        // Each worker plays out on its own copy of the position
+        AtomicInteger remaining = new AtomicInteger(playoutsPerMove);
+        IntStream.range(0, threads).parallel().forEach(worker -> {
+            GameMode sim = state.copy();
+            SplittableRandom random = new SplittableRandom();
+            Node[] path = new Node[sim.getEmptyCellCount() + 1];
+            while (remaining.getAndDecrement() > 0) {
+                playout(treeRoot, sim, path, random);
+            }
+        });
+
+        root = treeRoot;
+        rootHash = state.getHash();
+        rootMoveCount = state.getMoveCount();
+
+        // Play the most visited move
+        Node best = null;
+        for (Node child : treeRoot.children) {
+            if (best == null || child.visits > best.visits) {
+                best = child;
+            }
+        }
+        int cell = Move.cellOf(best.move);
+        int size = state.getBoardSize();
+        int winRate = best.visits > 0 ? best.reward * 50 / best.visits : 0;
+        return new Move(cell / size, cell % size, Move.letterOf(best.move), winRate);
+    }
+
+    // Find the node for the current position in the tree kept from the last call, if any
+    private Node reuseSubtree(GameMode state) {
+        if (root == null || state.getMoveCount() < rootMoveCount) {
+            return null;
+        }
+        GameMode previous = state.copy();
+        while (previous.getMoveCount() > rootMoveCount) {
+            previous.undoMove();
+        }
+        if (previous.getHash() != rootHash) {
+            return null; // A different game or a different line
+        }
+
+        Node node = root;
+        int size = state.getBoardSize();
+        for (int ply = rootMoveCount; ply < state.getMoveCount() && node != null; ply++) {
+            int cell = state.getMoveCell(ply);
+            int move = Move.encode(cell, state.getCell(cell / size, cell % size));
+            node = node.child(move);
+        }
+        return node;
+    }
+
+    // One playout: select down the tree, expand, play randomly to the end, back up the result
+    private void playout(Node treeRoot, GameMode sim, Node[] path, SplittableRandom random) {
+        int startMoves = sim.getMoveCount();
+        int size = sim.getBoardSize();
+        int length = 0;
+        Node node = treeRoot;
+        node.addVisit();
+        path[length++] = node;
+
+        while (!sim.isGameOver()) {
+            Node[] children = node.children;
+            if (children == null) {
+                if (node != treeRoot && node.visits < EXPAND_VISITS) {
+                    break;
+                }
+                children = node.expand(sim);
+            }
+            node = select(node, children);
+            node.addVisit(); // Counts as a loss until the result is backed up
+            path[length++] = node;
+            int cell = Move.cellOf(node.move);
+            sim.makeMove(cell / size, cell % size, Move.letterOf(node.move));
+        }
+
+        // Random playout to the end of the game. Each step samples a few random moves and
+        // keeps the first one that scores, so playouts do not ignore SOSs left open.
+        while (!sim.isGameOver()) {
+            for (int sample = 1; ; sample++) {
+                int cell = sim.getEmptyCell(random.nextInt(sim.getEmptyCellCount()));
+                if (sim.makeMove(cell / size, cell % size, LETTERS[random.nextInt(2)])
+                        || sample == ROLLOUT_SAMPLES || sim.getEmptyCellCount() == 0) {
+                    break;
+                }
+                sim.undoMove();
+            }
+        }
+
+        char winner = winner(sim);
+        for (int i = 1; i < length; i++) {
+            Node visited = path[i];
+            // Reward in half points from the point of view of the player who made the move
+            visited.addReward(winner == ' ' ? 1 : winner == visited.mover ? 2 : 0);
+        }
+        while (sim.getMoveCount() > startMoves) {
+            sim.undoMove();
+        }
+    }
+
+    // Winner of a finished game, ' ' for a draw
+    private char winner(GameMode sim) {
+        if (isSimpleMode) {
+            // The player who forms the SOS keeps the turn, so the side to move is the winner
+            return sim.getLastMoveSequenceCount() > 0 ? sim.getCurrentPlayer() : ' ';
+        }
+        int margin = sim.getBlueScore() - sim.getRedScore();
+        return margin > 0 ? 'B' : margin < 0 ? 'R' : ' ';
+    }
+
+    // UCT selection; unvisited children are taken first
+    private static Node select(Node parent, Node[] children) {
+        double logVisits = Math.log(Math.max(1, parent.visits));
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            int visits = child.visits;
+            if (visits == 0) {
+                return child;
+            }
+            double value = child.reward / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Tree node, shared by all workers; statistics are updated atomically
+    private static final class Node {
+        private static final VarHandle VISITS;
+        private static final VarHandle REWARD;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                VISITS = lookup.findVarHandle(Node.class, "visits", int.class);
+                REWARD = lookup.findVarHandle(Node.class, "reward", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final int move;   // Move code that led here, -1 for the root
+        final char mover; // Player who made that move
+        volatile Node[] children; // Null until expanded
+        volatile int visits;
+        volatile int reward; // Half points: 2 for a win, 1 for a draw
+
+        Node(int move, char mover) {
+            this.move = move;
+            this.mover = mover;
+        }
+
+        void addVisit() {
+            VISITS.getAndAdd(this, 1);
+        }
+
+        void addReward(int points) {
+            REWARD.getAndAdd(this, points);
+        }
+
+        // Create one child per legal move; only the first worker to get here builds them
+        synchronized Node[] expand(GameMode sim) {
+            if (children == null) {
+                Node[] created = new Node[sim.getEmptyCellCount() * 2];
+                char player = sim.getCurrentPlayer();
+                for (int k = 0; k < sim.getEmptyCellCount(); k++) {
+                    int cell = sim.getEmptyCell(k);
+                    created[2 * k] = new Node(Move.encode(cell, 'S'), player);
+                    created[2 * k + 1] = new Node(Move.encode(cell, 'O'), player);
+                }
+                children = created;
+            }
+            return children;
+        }
+
+        Node child(int move) {
+            Node[] current = children;
+            if (current != null) {
+                for (Node child : current) {
+                    if (child.move == move) {
+                        return child;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package llm;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.JSONObject;
+
+/**
+ * Collects the positions that API players submit within a short window and asks about all of
+ * them in one request, so many games running at once make fewer, larger requests. The
+ * prompt numbers the positions and asks for one "number: move" line each; every game's
+ * future gets its own line back.
+ *
+ * A window that collects a single position sends that position's message unchanged, and its
+ * future gets the whole reply, as an unbatched request would.
+ *
+ * Each position brings its own time limit and usage callback, so the batcher holds on to no
+ * player: a batch's request waits as long as its most patient position, and its token usage
+ * is split evenly over the positions in it.
+ *
+ * BatchingBenchmark checks batching end to end against StubApiServer.
+ */
+public final class MoveBatcher {
+    // Collection window and batch size, read from the sos.api.batch.ms and sos.api.batch.size system properties
+    public static final long DEFAULT_WINDOW_MILLIS = Long.getLong("sos.api.batch.ms", 50);
+    public static final int DEFAULT_MAX_BATCH = Integer.getInteger("sos.api.batch.size", 8);
+
+    private static final String BATCH_INSTRUCTIONS = """
+        The positions below come from %d separate games. Answer every position on its own
+        line as its number, a colon and your answer for it, for example:
+        1: 2,1,S
+
+        """;
+    private static final Pattern ANSWER_LINE = Pattern.compile("\\s*(?:Position\\s*)?(\\d{1,4})\\s*:\\s*(.*)");
+
+    // Builds the HTTP request for a message about the given number of positions
+    public interface RequestFactory {
+        HttpRequest create(String message, int positions, long timeoutMillis);
+    }
+
+    private final ApiClient client;
+    private final RequestFactory requests;
+    private final long windowMillis;
+    private final int maxBatch;
+    private List<Pending> pending = new ArrayList<>();
+
+    public MoveBatcher(ApiClient client, RequestFactory requests, long windowMillis, int maxBatch) {
+        this.client = client;
+        this.requests = requests;
+        this.windowMillis = windowMillis;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    /**
+     * Queue a position message for the next batch. The result is the reply for this position:
+     * the first of its answer lines that accepts takes, or null if the batch failed or had no
+     * such line. Usage gets this position's share of the batch's token usage.
+     */
+    public CompletableFuture<String> submit(String message, Predicate<String> accepts, long timeoutMillis,
+            Consumer<JSONObject> usage) {
+        Pending entry = new Pending(message, accepts, timeoutMillis, usage);
+        boolean full;
+        synchronized (this) {
+            pending.add(entry);
+            full = pending.size() >= maxBatch;
+            if (pending.size() == 1 && !full) {
+                CompletableFuture.runAsync(this::flush, CompletableFuture.delayedExecutor(windowMillis, TimeUnit.MILLISECONDS));
+            }
+        }
+        if (full) {
+            flush();
+        }
+        return entry.reply;
+    }
+
+    // Send everything collected so far as one request
+    private void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        batch.removeIf(entry -> entry.reply.isDone()); // Callers that gave up already
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        String message;
+        if (batch.size() == 1) {
+            message = batch.get(0).message;
+        } else {
+            StringBuilder prompt = new StringBuilder(BATCH_INSTRUCTIONS.formatted(batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                prompt.append("Position ").append(i + 1).append(":\n").append(batch.get(i).message).append("\n\n");
+            }
+            message = prompt.toString();
+        }
+
+        long timeoutMillis = batch.stream().mapToLong(entry -> entry.timeoutMillis).max().getAsLong();
+        client.sendAsync(requests.create(message, batch.size(), timeoutMillis), HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, error) -> {
+                String text = null;
+                if (error != null) {
+                    System.err.println("Claude API error: " + error.getMessage());
+                } else if (response.statusCode() != 200) {
+                    System.err.println("API Error: " + response.statusCode() + " - " + response.body());
+                } else {
+                    try {
+                        JSONObject jsonResponse = new JSONObject(response.body());
+                        shareUsage(jsonResponse.optJSONObject("usage"), batch);
+                        text = jsonResponse.getJSONArray("content").getJSONObject(0).getString("text");
+                    } catch (RuntimeException e) {
+                        System.err.println("Claude API error: " + e.getMessage());
+                    }
+                }
+                if (text != null && batch.size() == 1) {
+                    batch.get(0).reply.complete(text);
+                } else if (text != null) {
+                    fanOut(text, batch);
+                }
+                for (Pending entry : batch) {
+                    entry.reply.complete(null); // Positions the reply did not answer
+                }
+            });
+    }
+
+    // Split the reported token counts over the positions; the shares add up to the totals
+    private static void shareUsage(JSONObject usage, List<Pending> batch) {
+        if (usage == null) {
+            return;
+        }
+        long input = usage.optLong("input_tokens");
+        long output = usage.optLong("output_tokens");
+        int n = batch.size();
+        for (int i = 0; i < n; i++) {
+            batch.get(i).usage.accept(new JSONObject()
+                .put("input_tokens", input * (i + 1) / n - input * i / n)
+                .put("output_tokens", output * (i + 1) / n - output * i / n));
+        }
+    }
+
+    // Give each position the first of its numbered answer lines that it accepts
+    private static void fanOut(String text, List<Pending> batch) {
+        for (String line : text.split("\\R")) {
+            Matcher matcher = ANSWER_LINE.matcher(line);
+            if (!matcher.matches()) {
+                continue;
+            }
+            int index = Integer.parseInt(matcher.group(1)) - 1;
+            if (index >= 0 && index < batch.size()) {
+                Pending entry = batch.get(index);
+                if (!entry.reply.isDone() && entry.accepts.test(matcher.group(2))) {
+                    entry.reply.complete(matcher.group(2));
+                }
+            }
+        }
+    }
+
+    private static final class Pending {
+        final String message;
+        final Predicate<String> accepts;
+        final long timeoutMillis;
+        final Consumer<JSONObject> usage;
+        final CompletableFuture<String> reply = new CompletableFuture<>();
+
+        Pending(String message, Predicate<String> accepts, long timeoutMillis, Consumer<JSONObject> usage) {
+            this.message = message;
+            this.accepts = accepts;
+            this.timeoutMillis = timeoutMillis;
+            this.usage = usage;
+        }
+    }
+}
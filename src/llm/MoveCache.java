@@ -0,0 +1,166 @@
+package llm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of validated API moves, so a position the API has already answered costs no
+ * request. Boards are keyed in canonical orientation: the smallest of the board's 8 rotations
+ * and reflections, read row by row. The key also holds the game mode and the side to move.
+ * Moves are stored in canonical coordinates and turned back into the real board's orientation
+ * on a hit.
+ *
+ * The cache is saved to llm_move_cache.txt (or the file named by sos.cache.file), one
+ * "key<TAB>move code" line per entry from the least to the most recently used, and loaded
+ * again on first use.
+ */
+public final class MoveCache {
+    // Entries kept, read from the sos.cache.size system property
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("sos.cache.size", 10_000);
+    // File the shared cache is kept in, read from the sos.cache.file system property
+    public static final String DEFAULT_CACHE_FILE = System.getProperty("sos.cache.file", "llm_move_cache.txt");
+
+    private static MoveCache shared;
+
+    private final int capacity;
+    private final Path file;
+    private final LinkedHashMap<String, Integer> entries;
+
+    public MoveCache(int capacity, Path file) {
+        this.capacity = capacity;
+        this.file = file;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > MoveCache.this.capacity;
+            }
+        };
+        load();
+    }
+
+    // Process-wide cache shared by all API players, loaded from disk on first use
+    public static synchronized MoveCache shared() {
+        if (shared == null) {
+            shared = new MoveCache(DEFAULT_CAPACITY, Paths.get(DEFAULT_CACHE_FILE));
+        }
+        return shared;
+    }
+
+    // Cached move for a position, in the board's own orientation; null on a miss
+    public synchronized ComputerPlayer.Move get(char[][] board, boolean isSimpleMode, char side) {
+        int symmetry = canonicalSymmetry(board);
+        Integer code = entries.get(key(board, symmetry, isSimpleMode, side));
+        if (code == null) {
+            return null;
+        }
+        int n = board.length;
+        int cell = inverse(ComputerPlayer.Move.cellOf(code), symmetry, n);
+        return new ComputerPlayer.Move(cell / n, cell % n, ComputerPlayer.Move.letterOf(code), 100);
+    }
+
+    public synchronized void put(char[][] board, boolean isSimpleMode, char side, ComputerPlayer.Move move) {
+        int symmetry = canonicalSymmetry(board);
+        int n = board.length;
+        int cell = transform(move.row * n + move.col, symmetry, n);
+        entries.put(key(board, symmetry, isSimpleMode, side), ComputerPlayer.Move.encode(cell, move.letter));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Cell that cell moves to under symmetry s: 4 rotations, then 4 reflections
+    private static int transform(int cell, int s, int n) {
+        int r = cell / n;
+        int c = cell % n;
+        int m = n - 1;
+        switch (s) {
+            case 1: return c * n + (m - r);
+            case 2: return (m - r) * n + (m - c);
+            case 3: return (m - c) * n + r;
+            case 4: return r * n + (m - c);
+            case 5: return (m - r) * n + c;
+            case 6: return c * n + r;
+            case 7: return (m - c) * n + (m - r);
+            default: return cell;
+        }
+    }
+
+    private static int inverse(int cell, int s, int n) {
+        // Rotations by 90 and 270 degrees undo each other; every other symmetry undoes itself
+        return transform(cell, s == 1 ? 3 : s == 3 ? 1 : s, n);
+    }
+
+    // Board read row by row after applying symmetry s
+    private static char[] image(char[][] board, int s) {
+        int n = board.length;
+        char[] image = new char[n * n];
+        for (int cell = 0; cell < n * n; cell++) {
+            image[transform(cell, s, n)] = board[cell / n][cell % n];
+        }
+        return image;
+    }
+
+    // Symmetry that gives the smallest image of the board
+    private static int canonicalSymmetry(char[][] board) {
+        int best = 0;
+        char[] bestImage = image(board, 0);
+        for (int s = 1; s < 8; s++) {
+            char[] image = image(board, s);
+            if (Arrays.compare(image, bestImage) < 0) {
+                best = s;
+                bestImage = image;
+            }
+        }
+        return best;
+    }
+
+    private static String key(char[][] board, int symmetry, boolean isSimpleMode, char side) {
+        return (isSimpleMode ? "S" : "G") + side + board.length + ":" + new String(image(board, symmetry)).replace(' ', '.');
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    entries.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Could not read " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Write the cache to its file, least recently used first so a reload keeps the LRU order
+    public synchronized void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent); // sos.cache.file may name a directory not made yet
+            }
+        } catch (IOException e) {
+            System.err.println("Could not save " + file + ": " + e.getMessage());
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not save " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package llm;
 
 public class SimpleGameMode extends GameModeBase {
     private boolean gameOver;
+    private int sosMoves; // Number of moves on the stack that formed an SOS
     //private char[][] board;
 
     public SimpleGameMode() {
@@ -9,11 +10,29 @@ public class SimpleGameMode extends GameModeBase {
         this.gameOver = false;
     }
 
+    private SimpleGameMode(SimpleGameMode other) {
+        super(other);
+        this.gameOver = other.gameOver;
+        this.sosMoves = other.sosMoves;
+    }
+
+    @Override
+    public SimpleGameMode copy() {
+        return new SimpleGameMode(this);
+    }
+
     @Override
     protected void handleSOSFound() {
+        sosMoves++;
         gameOver = true; // Game ends immediately when an SOS is formed
     }
 
+    @Override
+    protected void undoSOSFound() {
+        sosMoves--;
+        gameOver = sosMoves > 0; // Still over if an earlier move already formed an SOS
+    }
+
     @Override
     public int getBlueScore() {
         return 0; // No scoring in simple mode
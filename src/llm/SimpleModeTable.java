@@ -0,0 +1,249 @@
+package llm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Perfect-play table for Simple mode. The board is always 3x3, so every position (3^9 boards)
+ * is solved exactly once, and a computer move is a single array lookup.
+ *
+ * Positions are stored once per symmetry class: a board is mapped to the smallest code among
+ * its 8 rotations and reflections, and the stored move is mapped back to the actual board.
+ * The table ships as the resource simple3x3.table, written by main(); if the resource is
+ * missing it is solved in memory instead, which takes well under a second.
+ *
+ * File format: entry count, then per entry the canonical board code (short) and the entry
+ * byte. Board codes are base 3, cell 0 lowest, with 0 for empty, 1 for 'S' and 2 for 'O'.
+ * Entry byte: bits 0-3 best cell, bit 4 set for 'O', bits 5-6 result, bit 7 always set.
+ */
+public final class SimpleModeTable {
+    public static final int BOARD_SIZE = 3;
+    static final String RESOURCE = "simple3x3.table";
+
+    // Results for the side to move
+    public static final int DRAW = 0;
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+
+    private static final int CELLS = BOARD_SIZE * BOARD_SIZE;
+    private static final int POSITIONS = 19_683; // 3^9
+    private static final int[] POW3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561};
+    private static final int[][] LINES = {
+        {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, // Rows
+        {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, // Columns
+        {0, 4, 8}, {2, 4, 6}             // Diagonals
+    };
+
+    // Symmetry s moves cell i to SYMMETRIES[s][i]; INVERSE undoes it
+    private static final int[][] SYMMETRIES = new int[8][CELLS];
+    private static final int[][] INVERSE = new int[8][CELLS];
+
+    static {
+        for (int cell = 0; cell < CELLS; cell++) {
+            int r = cell / BOARD_SIZE;
+            int c = cell % BOARD_SIZE;
+            int m = BOARD_SIZE - 1;
+            int[][] images = {
+                {r, c}, {c, m - r}, {m - r, m - c}, {m - c, r}, // Rotations
+                {r, m - c}, {m - r, c}, {c, r}, {m - c, m - r}  // Reflections
+            };
+            for (int s = 0; s < 8; s++) {
+                int image = images[s][0] * BOARD_SIZE + images[s][1];
+                SYMMETRIES[s][cell] = image;
+                INVERSE[s][image] = cell;
+            }
+        }
+    }
+
+    private static SimpleModeTable shared;
+
+    private final byte[] entries; // By canonical board code; 0 for finished or non-canonical boards
+
+    private SimpleModeTable(byte[] entries) {
+        this.entries = entries;
+    }
+
+    // Process-wide table, loaded from the resource on first use
+    public static synchronized SimpleModeTable shared() {
+        if (shared == null) {
+            shared = load();
+        }
+        return shared;
+    }
+
+    private static SimpleModeTable load() {
+        try (InputStream resource = SimpleModeTable.class.getResourceAsStream(RESOURCE)) {
+            if (resource != null) {
+                DataInputStream in = new DataInputStream(resource);
+                byte[] entries = new byte[POSITIONS];
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int code = in.readUnsignedShort();
+                    entries[code] = in.readByte();
+                }
+                return new SimpleModeTable(entries);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + RESOURCE + ": " + e.getMessage());
+        }
+        return new SimpleModeTable(solve());
+    }
+
+    // Best move for the side to move, or null if the game is over or the board is not 3x3
+    public ComputerPlayer.Move bestMove(GameMode state) {
+        if (state.getBoardSize() != BOARD_SIZE || state.isGameOver()) {
+            return null;
+        }
+        int code = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            char letter = state.getCell(cell / BOARD_SIZE, cell % BOARD_SIZE);
+            code += POW3[cell] * (letter == 'S' ? 1 : letter == 'O' ? 2 : 0);
+        }
+
+        int symmetry = 0;
+        int canonical = code;
+        for (int s = 1; s < 8; s++) {
+            int image = transform(code, s);
+            if (image < canonical) {
+                canonical = image;
+                symmetry = s;
+            }
+        }
+        int entry = entries[canonical] & 0xFF;
+        if (entry == 0) {
+            return null;
+        }
+        int cell = INVERSE[symmetry][entry & 0xF];
+        int result = entry >>> 5 & 3;
+        return new ComputerPlayer.Move(cell / BOARD_SIZE, cell % BOARD_SIZE, (entry & 0x10) != 0 ? 'O' : 'S',
+            result == WIN ? 1 : result == LOSS ? -1 : 0);
+    }
+
+    // Board code after applying symmetry s
+    private static int transform(int code, int s) {
+        int image = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            image += POW3[SYMMETRIES[s][cell]] * (code / POW3[cell] % 3);
+        }
+        return image;
+    }
+
+    private static int canonical(int code) {
+        int min = code;
+        for (int s = 1; s < 8; s++) {
+            min = Math.min(min, transform(code, s));
+        }
+        return min;
+    }
+
+    /**
+     * Solve every position by negamax over board codes. A score of 10 - n means the side to
+     * move forms the first SOS n plies from now, its negation means the opponent does, and 0
+     * is a draw, so wins are taken as early and losses put off as late as possible.
+     * Entries are kept for canonical boards only.
+     */
+    static byte[] solve() {
+        int[] scores = new int[POSITIONS];
+        int[] bestMoves = new int[POSITIONS];
+        Arrays.fill(scores, Integer.MIN_VALUE);
+        byte[] entries = new byte[POSITIONS];
+        for (int code = 0; code < POSITIONS; code++) {
+            if (!hasSOS(code) && code == canonical(code) && solve(code, scores, bestMoves) != Integer.MIN_VALUE) {
+                int score = scores[code];
+                int result = score > 0 ? WIN : score < 0 ? LOSS : DRAW;
+                entries[code] = (byte) (0x80 | result << 5 | bestMoves[code]);
+            }
+        }
+        return entries;
+    }
+
+    // Score of a position without an SOS; MIN_VALUE for a full board
+    private static int solve(int code, int[] scores, int[] bestMoves) {
+        if (scores[code] != Integer.MIN_VALUE || isFull(code)) {
+            return scores[code];
+        }
+        int best = Integer.MIN_VALUE;
+        int bestMove = 0;
+        for (int cell = 0; cell < CELLS && best < CELLS; cell++) {
+            if (code / POW3[cell] % 3 != 0) {
+                continue;
+            }
+            for (int digit = 1; digit <= 2; digit++) {
+                int child = code + POW3[cell] * digit;
+                int score;
+                if (formsSOS(child, cell)) {
+                    score = CELLS; // Win on this ply
+                } else if (isFull(child)) {
+                    score = 0;
+                } else {
+                    // The opponent's score, one ply further away
+                    int reply = solve(child, scores, bestMoves);
+                    score = reply > 0 ? -(reply - 1) : reply < 0 ? -reply - 1 : 0;
+                }
+                if (score > best) {
+                    best = score;
+                    bestMove = cell | (digit == 2 ? 0x10 : 0);
+                }
+            }
+        }
+        scores[code] = best;
+        bestMoves[code] = bestMove;
+        return best;
+    }
+
+    private static boolean formsSOS(int code, int cell) {
+        for (int[] line : LINES) {
+            if ((line[0] == cell || line[1] == cell || line[2] == cell) && isSOS(code, line)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasSOS(int code) {
+        for (int[] line : LINES) {
+            if (isSOS(code, line)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSOS(int code, int[] line) {
+        return code / POW3[line[0]] % 3 == 1 && code / POW3[line[1]] % 3 == 2 && code / POW3[line[2]] % 3 == 1;
+    }
+
+    private static boolean isFull(int code) {
+        for (int cell = 0; cell < CELLS; cell++) {
+            if (code / POW3[cell] % 3 == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Regenerate the shipped table: java llm.SimpleModeTable src/llm/simple3x3.table
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : "src/llm/" + RESOURCE;
+        byte[] entries = solve();
+        int count = 0;
+        for (byte entry : entries) {
+            count += entry != 0 ? 1 : 0;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(count);
+            for (int code = 0; code < POSITIONS; code++) {
+                if (entries[code] != 0) {
+                    out.writeShort(code);
+                    out.writeByte(entries[code]);
+                }
+            }
+        }
+        System.out.println("Wrote " + count + " positions to " + path);
+    }
+}
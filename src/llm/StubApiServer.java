@@ -0,0 +1,248 @@
+package llm;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Local stand-in for the messages API, for measuring and checking the API player offline.
+ * It reads the boards in each prompt and answers with a random empty cell, shaped like the
+ * real API's replies: a JSON message, or server-sent events when the request streams.
+ * Batched prompts get one numbered answer line per position.
+ *
+ * Prompts that ask for reasoning get a reasoning block before the move and a reflection after
+ * it; other prompts get the move alone. Replies are cut to the request's max_tokens, and
+ * token usage is reported at about four characters a token.
+ *
+ * Replies take a random time to the first token: lognormal around the median, with the
+ * spread sigma (the 99th percentile is median * e^(2.33 sigma)). Then each output token
+ * takes tokenMillis, and a streamed reply sends each part when it has been generated. A
+ * share of the requests (errorRate) fail with the API's 529 overloaded error, and a share
+ * of the answers (malformedRate) hold no usable move.
+ *
+ * Run on its own with: java llm.StubApiServer [port], then set sos.api.url to its URL.
+ */
+public final class StubApiServer {
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final String REASONING = """
+        <thinking>
+        <step>List the lines where one more letter completes an SOS; none can be taken right now.</step>
+        <step>Check every empty cell for S_S and SO_ patterns that an opponent could finish next turn.</step>
+        <step>Prefer cells in the middle of the board, which take part in the most lines.</step>
+        <step>Avoid placing an O between an S and an empty cell, or an S two cells from an S.</step>
+        </thinking>
+        """;
+    private static final String REFLECTION = """
+
+        <reflection>The move leaves no SOS open for the opponent and keeps options for later.</reflection>
+        <reward>0.6</reward>
+        """;
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long medianMillis = 300;
+    private volatile double sigma = 0.5;
+    private volatile double tokenMillis = 10;
+    private volatile double errorRate;
+    private volatile double malformedRate;
+
+    public StubApiServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/messages", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    // URL to put in sos.api.url or ComputerPlayerAPI.setApiUrl
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/messages";
+    }
+
+    public void setLatency(long medianMillis, double sigma) {
+        this.medianMillis = medianMillis;
+        this.sigma = sigma;
+    }
+
+    // Generation time per output token
+    public void setTokenMillis(double tokenMillis) {
+        this.tokenMillis = tokenMillis;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setMalformedRate(double malformedRate) {
+        this.malformedRate = malformedRate;
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        SplittableRandom random = new SplittableRandom();
+        try (exchange) {
+            JSONObject request = new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            String prompt = request.getJSONArray("messages").getJSONObject(0).getString("content");
+            long millis = Math.round(medianMillis * Math.exp(sigma * random.nextGaussian())); // To the first token
+
+            if (random.nextDouble() < errorRate) {
+                sleep(millis / 10);
+                JSONObject error = new JSONObject()
+                    .put("type", "error")
+                    .put("error", new JSONObject().put("type", "overloaded_error").put("message", "Overloaded"));
+                send(exchange, 529, error.toString());
+                return;
+            }
+
+            // The reply in parts, cut to max_tokens
+            boolean reasoning = prompt.contains("reasoning");
+            String[] parts = {reasoning ? REASONING : "", answer(prompt, random), reasoning ? REFLECTION : ""};
+            int room = request.optInt("max_tokens", Integer.MAX_VALUE / CHARS_PER_TOKEN) * CHARS_PER_TOKEN;
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = parts[i].substring(0, Math.min(parts[i].length(), room));
+                room -= parts[i].length();
+            }
+            String text = String.join("", parts);
+            JSONObject usage = new JSONObject()
+                .put("input_tokens", tokens(request.optString("system") + prompt))
+                .put("output_tokens", tokens(text));
+
+            if (request.optBoolean("stream")) {
+                stream(exchange, parts, millis, usage);
+            } else {
+                sleep(millis + Math.round(tokens(text) * tokenMillis));
+                JSONObject message = new JSONObject()
+                    .put("type", "message")
+                    .put("role", "assistant")
+                    .put("content", new JSONArray().put(new JSONObject()
+                        .put("type", "text")
+                        .put("text", text)))
+                    .put("stop_reason", "end_turn")
+                    .put("usage", usage);
+                send(exchange, 200, message.toString());
+            }
+        } catch (RuntimeException e) {
+            send(exchange, 400, new JSONObject().put("type", "error").put("error",
+                new JSONObject().put("type", "invalid_request_error").put("message", String.valueOf(e.getMessage()))).toString());
+        }
+    }
+
+    // Answer lines for the prompt: one move, or "n: move" per position of a batch
+    private String answer(String prompt, SplittableRandom random) {
+        String[] positions = prompt.split("Position \\d+:\n");
+        if (positions.length <= 1) {
+            return move(prompt, random);
+        }
+        StringBuilder answer = new StringBuilder();
+        for (int i = 1; i < positions.length; i++) {
+            answer.append(i).append(": ").append(move(positions[i], random)).append('\n');
+        }
+        return answer.toString();
+    }
+
+    // A random empty cell of the board in the message, or a malformed answer
+    private String move(String message, SplittableRandom random) {
+        List<String> rows = new ArrayList<>();
+        for (String line : message.split("\n")) {
+            if (line.matches("[SO.](\\|?[SO.])*")) { // Drawn or compact rows
+                rows.add(line.replace("|", ""));
+            }
+        }
+        List<Integer> empty = new ArrayList<>();
+        for (int r = 0; r < rows.size(); r++) {
+            for (int c = 0; c < rows.get(r).length(); c++) {
+                if (rows.get(r).charAt(c) == '.') {
+                    empty.add(r * rows.size() + c);
+                }
+            }
+        }
+        if (empty.isEmpty() || random.nextDouble() < malformedRate) {
+            return random.nextBoolean() ? "I would place an S in the middle." : rows.size() + ",0,S"; // Prose, or off the board
+        }
+        int cell = empty.get(random.nextInt(empty.size()));
+        return cell / rows.size() + "," + cell % rows.size() + "," + (random.nextBoolean() ? 'S' : 'O');
+    }
+
+    private static int tokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    // Server-sent events in the API's streaming format; stops quietly if the client hangs up
+    private void stream(HttpExchange exchange, String[] parts, long millis, JSONObject usage) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            event(out, "message_start", new JSONObject().put("type", "message_start")
+                .put("message", new JSONObject().put("type", "message").put("role", "assistant")
+                    .put("usage", new JSONObject().put("input_tokens", usage.getInt("input_tokens")).put("output_tokens", 1))));
+            event(out, "content_block_start", new JSONObject().put("type", "content_block_start").put("index", 0)
+                .put("content_block", new JSONObject().put("type", "text").put("text", "")));
+            sleep(millis);
+            for (String part : parts) {
+                if (!part.isEmpty()) {
+                    sleep(Math.round(tokens(part) * tokenMillis));
+                    delta(out, part);
+                }
+            }
+            event(out, "content_block_stop", new JSONObject().put("type", "content_block_stop").put("index", 0));
+            event(out, "message_delta", new JSONObject().put("type", "message_delta")
+                .put("delta", new JSONObject().put("stop_reason", "end_turn"))
+                .put("usage", new JSONObject().put("output_tokens", usage.getInt("output_tokens"))));
+            event(out, "message_stop", new JSONObject().put("type", "message_stop"));
+        } catch (IOException e) {
+            // The client has its move and closed the stream
+        }
+    }
+
+    private static void delta(OutputStream out, String text) throws IOException {
+        event(out, "content_block_delta", new JSONObject().put("type", "content_block_delta").put("index", 0)
+            .put("delta", new JSONObject().put("type", "text_delta").put("text", text)));
+    }
+
+    private static void event(OutputStream out, String name, JSONObject data) throws IOException {
+        out.write(("event: " + name + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(Math.max(0, millis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        StubApiServer stub = new StubApiServer(args.length > 0 ? Integer.parseInt(args[0]) : 8089);
+        stub.start();
+        System.out.println("Stub API listening on " + stub.getUrl());
+    }
+}
@@ -0,0 +1,152 @@
+package llm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-size transposition table for the search engines, kept off the Java heap in a
+ * direct ByteBuffer so large tables add nothing to GC work.
+ *
+ * The table is split into 64-byte buckets of four 16-byte entries. An entry stores
+ * (key ^ data, data), so a reader can tell when two threads wrote the halves of an entry at
+ * the same time: the XOR no longer matches the key and the entry is treated as a miss.
+ * That lets any number of search threads share one table without locks.
+ * On a store, an entry for the same key is updated in place; otherwise the shallowest or
+ * oldest entry in the bucket is replaced.
+ *
+ * Data layout: score in bits 0-31, move + 1 in bits 32-47 (0 for none), depth in bits
+ * 48-55, bound in bits 56-57 and search generation in bits 58-63.
+ */
+public final class TranspositionTable {
+    // Table size in MB, read from the sos.tt.mb system property
+    public static final int DEFAULT_SIZE_MB = Integer.getInteger("sos.tt.mb", 64);
+    public static final int MAX_SIZE_MB = 1024; // A single direct buffer is limited to 2 GB
+
+    // Bound types
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; // Score is at least the stored value
+    public static final int UPPER = 3; // Score is at most the stored value
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static TranspositionTable shared;
+
+    private final ByteBuffer buffer;
+    private final long bucketMask;
+    private volatile int generation;
+
+    public TranspositionTable(int sizeMb) {
+        if (sizeMb < 1 || sizeMb > MAX_SIZE_MB) {
+            throw new IllegalArgumentException("Table size must be between 1 and " + MAX_SIZE_MB + " MB: " + sizeMb);
+        }
+        // Round the bucket count down to a power of two so the index is a mask
+        long buckets = Long.highestOneBit((long) sizeMb * 1024 * 1024 / BUCKET_BYTES);
+        this.buffer = ByteBuffer.allocateDirect((int) (buckets * BUCKET_BYTES));
+        this.bucketMask = buckets - 1;
+    }
+
+    // Process-wide table shared by all search players, created on first use
+    public static synchronized TranspositionTable shared() {
+        if (shared == null) {
+            shared = new TranspositionTable(Math.min(DEFAULT_SIZE_MB, MAX_SIZE_MB));
+        }
+        return shared;
+    }
+
+    // Number of entries the table can hold
+    public long capacity() {
+        return (bucketMask + 1) * BUCKET_ENTRIES;
+    }
+
+    // Start a new search; entries from older searches become the first to be replaced
+    public void newSearch() {
+        generation = (generation + 1) & 63;
+    }
+
+    // Remove every entry
+    public void clear() {
+        for (int offset = 0; offset < buffer.capacity(); offset += 8) {
+            LONGS.setOpaque(buffer, offset, 0L);
+        }
+    }
+
+    // Look up a position; returns the packed data, or 0 if the table has no entry for it
+    public long probe(long key) {
+        int bucket = (int) ((key & bucketMask) * BUCKET_BYTES);
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int offset = bucket + i * ENTRY_BYTES;
+            long data = (long) LONGS.getOpaque(buffer, offset + 8);
+            long check = (long) LONGS.getOpaque(buffer, offset);
+            if (data != 0 && (check ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    // Store a search result; move is a ComputerPlayer.Move code or -1 for none
+    public void store(long key, int depth, int bound, int move, int score) {
+        long data = (score & 0xFFFFFFFFL)
+            | (long) ((move + 1) & 0xFFFF) << 32
+            | (long) Math.min(Math.max(depth, 0), 255) << 48
+            | (long) bound << 56
+            | (long) generation << 58;
+
+        int bucket = (int) ((key & bucketMask) * BUCKET_BYTES);
+        int target = bucket;
+        int lowestPriority = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int offset = bucket + i * ENTRY_BYTES;
+            long oldData = (long) LONGS.getOpaque(buffer, offset + 8);
+            long oldCheck = (long) LONGS.getOpaque(buffer, offset);
+            if (oldData == 0 || (oldCheck ^ oldData) == key) {
+                // Same position or empty slot; keep a deeper result of the current search
+                if (oldData != 0 && move == -1) {
+                    data |= oldData & 0xFFFF_0000_0000L; // Keep the old best move
+                }
+                if (oldData != 0 && depth(oldData) > depth && bound != EXACT
+                        && generation(oldData) == generation) {
+                    return;
+                }
+                target = offset;
+                break;
+            }
+            // Prefer to replace shallow entries and entries left over from older searches
+            int age = (generation - generation(oldData)) & 63;
+            int priority = depth(oldData) - 8 * age;
+            if (priority < lowestPriority) {
+                lowestPriority = priority;
+                target = offset;
+            }
+        }
+        LONGS.setOpaque(buffer, target, key ^ data);
+        LONGS.setOpaque(buffer, target + 8, data);
+    }
+
+    // Accessors for the packed data returned by probe()
+    public static int score(long data) {
+        return (int) data;
+    }
+
+    public static int move(long data) {
+        return (int) (data >>> 32 & 0xFFFF) - 1;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 48 & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 56 & 3);
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 58 & 63);
+    }
+}
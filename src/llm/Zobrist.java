@@ -0,0 +1,43 @@
+package llm;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for SOS positions.
+ * A position's hash is the XOR of one key per (cell, letter) on the board, plus SIDE_KEY when
+ * Red is to move. The keys come from a fixed seed, so hashes are stable between runs and can
+ * be stored in files.
+ */
+public final class Zobrist {
+    private static final long SEED = 0x5F3C_2A71_9E0B_D4C3L;
+    public static final int MAX_BOARD_SIZE = 64; // Largest board there are keys for
+    private static final int MAX_CELLS = MAX_BOARD_SIZE * MAX_BOARD_SIZE;
+
+    public static final long SIDE_KEY; // XORed in while Red is to move
+    private static final long[] LETTER_KEYS; // Two keys per cell: 'S' then 'O'
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        SIDE_KEY = random.nextLong();
+        LETTER_KEYS = new long[MAX_CELLS * 2];
+        for (int i = 0; i < LETTER_KEYS.length; i++) {
+            LETTER_KEYS[i] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    // Key for a letter on a cell (row * boardSize + col)
+    public static long cellKey(int cell, char letter) {
+        return LETTER_KEYS[cell * 2 + (letter == 'S' ? 0 : 1)];
+    }
+
+    /**
+     * Key for the game variant. Hashes only cover cell indexes, so tables shared between
+     * board sizes or modes XOR this in to keep equal cell patterns on different boards apart.
+     */
+    public static long variantKey(int boardSize, boolean isSimpleMode) {
+        return new SplittableRandom(SEED + boardSize * 2 + (isSimpleMode ? 1 : 0)).nextLong();
+    }
+}